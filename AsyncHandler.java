@@ -0,0 +1,305 @@
+package frc.sorutil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * AsyncHandler is a log handler which hands records to other handlers on a background thread, so that logging never
+ * waits on a slow console or USB stick from the robot loop. Records are queued in a bounded, lock-free ring buffer;
+ * what happens when it's full is set by the {@link Overflow} policy, and records that are dropped are counted and
+ * reported once the buffer drains.
+ *
+ * <p>
+ * It is selected and configured from logging.properties (see {@link Logging#initLogging()}) like any other handler:
+ * </p>
+ *
+ * <pre>
+ * handlers = frc.sorutil.AsyncHandler
+ * frc.sorutil.AsyncHandler.handlers = java.util.logging.ConsoleHandler java.util.logging.FileHandler
+ * frc.sorutil.AsyncHandler.capacity = 1024
+ * frc.sorutil.AsyncHandler.overflow = DROP_NEWEST
+ * frc.sorutil.AsyncHandler.inferCaller = true
+ * frc.sorutil.AsyncHandler.level = INFO
+ * </pre>
+ *
+ * <p>
+ * The wrapped handlers are configured by their own properties, as usual. By default AsyncHandler wraps a
+ * ConsoleHandler, and its level is the lowest level of the handlers it wraps, so that records none of them would
+ * publish are filtered out before being queued.
+ * </p>
+ *
+ * <p>
+ * Since records are formatted on another thread, the class and method that logged each record are found before it's
+ * queued, which walks the stack. If the formatters in use don't print them, set inferCaller to false to skip it.
+ * </p>
+ */
+public class AsyncHandler extends Handler {
+  public static enum Overflow {
+    /** Drop the record being logged. Never blocks; the default. */
+    DROP_NEWEST,
+    /** Drop the oldest queued record to make room. Never blocks. */
+    DROP_OLDEST,
+    /** Wait for room. Never loses records, but a slow handler will stall the thread logging. */
+    BLOCK,
+  }
+
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long BLOCK_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+  private final Handler[] targets;
+  private final RingBuffer<LogRecord> buffer;
+  private final Overflow overflow;
+  private final boolean inferCaller;
+  private final Thread drainer;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private long droppedReported;
+  private volatile boolean closed;
+
+  /**
+   * Creates an AsyncHandler configured from the LogManager's properties, as the LogManager does for handlers named in
+   * logging.properties.
+   */
+  public AsyncHandler() {
+    this(intProperty("capacity", DEFAULT_CAPACITY), overflowProperty(), booleanProperty("inferCaller", true),
+        targetsProperty());
+
+    String level = property("level");
+    if (level != null) {
+      try {
+        setLevel(Level.parse(level.trim()));
+      } catch (IllegalArgumentException e) {
+        System.err.println("WARNING: AsyncHandler: unknown level: " + level);
+      }
+    }
+  }
+
+  /**
+   * @param capacity    the number of records that can be queued, rounded up to a power of two
+   * @param overflow    what to do with a record when the queue is full
+   * @param inferCaller whether to find the class and method that logged each record before queuing it
+   * @param targets     the handlers to publish records to, on the background thread
+   */
+  public AsyncHandler(int capacity, Overflow overflow, boolean inferCaller, Handler... targets) {
+    if (targets.length == 0) {
+      throw new IllegalArgumentException("AsyncHandler needs at least one handler to publish to");
+    }
+    this.targets = targets.clone();
+    this.buffer = new RingBuffer<>(capacity);
+    this.overflow = overflow;
+    this.inferCaller = inferCaller;
+
+    Level lowest = Level.OFF;
+    for (Handler target : targets) {
+      if (target.getLevel().intValue() < lowest.intValue()) {
+        lowest = target.getLevel();
+      }
+    }
+    setLevel(lowest);
+
+    drainer = new Thread(this::drain, "AsyncHandler");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public void publish(LogRecord record) {
+    if (closed || !isLoggable(record)) {
+      return;
+    }
+    if (inferCaller) {
+      record.getSourceClassName();
+    }
+
+    if (buffer.offer(record)) {
+      return;
+    }
+    switch (overflow) {
+      case DROP_NEWEST:
+        dropped.incrementAndGet();
+        break;
+      case DROP_OLDEST:
+        while (!buffer.offer(record)) {
+          if (buffer.poll() != null) {
+            dropped.incrementAndGet();
+          } else {
+            // The oldest slot is claimed by a producer that hasn't finished writing it yet.
+            Thread.yield();
+          }
+        }
+        break;
+      case BLOCK:
+        LockSupport.unpark(drainer);
+        while (!buffer.offer(record)) {
+          if (closed) {
+            dropped.incrementAndGet();
+            return;
+          }
+          LockSupport.parkNanos(BLOCK_INTERVAL_NANOS);
+        }
+        break;
+    }
+  }
+
+  /**
+   * Waits for the queued records to be published, up to a second, then flushes the wrapped handlers.
+   */
+  @Override
+  public void flush() {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+    while (!buffer.isEmpty() && drainer.isAlive() && System.nanoTime() < deadline) {
+      LockSupport.unpark(drainer);
+      LockSupport.parkNanos(BLOCK_INTERVAL_NANOS);
+    }
+    for (Handler target : targets) {
+      target.flush();
+    }
+  }
+
+  /**
+   * Publishes the queued records, then closes the wrapped handlers. Records logged after close() are ignored.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Handler target : targets) {
+      target.close();
+    }
+  }
+
+  /**
+   * The number of records dropped because the queue was full.
+   */
+  public long droppedRecords() {
+    return dropped.get();
+  }
+
+  private void drain() {
+    while (true) {
+      LogRecord record = buffer.poll();
+      if (record != null) {
+        for (Handler target : targets) {
+          publishTo(target, record);
+        }
+        continue;
+      }
+
+      reportDropped();
+      for (Handler target : targets) {
+        target.flush();
+      }
+      if (closed && buffer.isEmpty()) {
+        return;
+      }
+      LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+    }
+  }
+
+  private void reportDropped() {
+    long total = dropped.get();
+    if (total == droppedReported) {
+      return;
+    }
+    LogRecord record = new LogRecord(Level.WARNING, String.format(
+        "AsyncHandler dropped %d log records because its queue was full (%d total)", total - droppedReported, total));
+    record.setLoggerName("AsyncHandler");
+    record.setSourceClassName(AsyncHandler.class.getName());
+    record.setSourceMethodName("reportDropped");
+    droppedReported = total;
+    for (Handler target : targets) {
+      publishTo(target, record);
+    }
+  }
+
+  private void publishTo(Handler target, LogRecord record) {
+    try {
+      target.publish(record);
+    } catch (RuntimeException e) {
+      // Keep draining for the other handlers, and for later records.
+      reportError("failed to publish log record to " + target.getClass().getName(), e, ErrorManager.WRITE_FAILURE);
+    }
+  }
+
+  private static String property(String name) {
+    return LogManager.getLogManager().getProperty(AsyncHandler.class.getName() + "." + name);
+  }
+
+  private static int intProperty(String name, int defaultValue) {
+    String value = property(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      System.err.println("WARNING: AsyncHandler: " + name + " is not a number: " + value);
+      return defaultValue;
+    }
+  }
+
+  private static boolean booleanProperty(String name, boolean defaultValue) {
+    String value = property(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Boolean.parseBoolean(value.trim());
+  }
+
+  private static Overflow overflowProperty() {
+    String value = property("overflow");
+    if (value == null) {
+      return Overflow.DROP_NEWEST;
+    }
+    try {
+      return Overflow.valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARNING: AsyncHandler: unknown overflow policy: " + value);
+      return Overflow.DROP_NEWEST;
+    }
+  }
+
+  private static Handler[] targetsProperty() {
+    String value = property("handlers");
+    if (value == null || value.isBlank()) {
+      return new Handler[] {new ConsoleHandler()};
+    }
+
+    List<Handler> targets = new ArrayList<>();
+    // Separated by commas or whitespace, like the LogManager's own handlers property.
+    for (String name : value.split("[,\\s]+")) {
+      if (name.isEmpty()) {
+        continue;
+      }
+      try {
+        Class<?> type = ClassLoader.getSystemClassLoader().loadClass(name);
+        targets.add((Handler) type.getDeclaredConstructor().newInstance());
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        System.err.println("WARNING: AsyncHandler: could not load log handler: " + name + ": " + e);
+      }
+    }
+    if (targets.isEmpty()) {
+      return new Handler[] {new ConsoleHandler()};
+    }
+    return targets.toArray(new Handler[0]);
+  }
+}
@@ -9,9 +9,13 @@ public class ConstantAxis {
   public ConstantAxis(int joystick, int idx) {
     this.stick = joystick;
     this.idx = idx;
+    ConstantInput.get().use(joystick);
   }
 
+  /**
+   * Supplies the value of the axis, as of the start of the current cycle. See ConstantInput.
+   */
   public DoubleSupplier get() {
-    return () -> ConstantInput.get().lazyJoy(stick).getRawAxis(idx);
+    return () -> ConstantInput.get().axis(stick, idx);
   }
 }
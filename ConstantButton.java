@@ -10,13 +10,17 @@ public class ConstantButton {
   public ConstantButton(int joystick, int idx) {
     this.idx = idx;
     this.stick = joystick;
+    ConstantInput.get().use(joystick);
   }  
 
   public JoystickButton get() {
     return new JoystickButton(ConstantInput.get().lazyJoy(stick), idx);
   }
 
+  /**
+   * Supplies the state of the button, as of the start of the current cycle. See ConstantInput.
+   */
   public BooleanSupplier supplier() {
-    return () -> ConstantInput.get().lazyJoy(stick).getRawButton(idx);
+    return () -> ConstantInput.get().button(stick, idx);
   }
 }
@@ -1,25 +1,224 @@
 package frc.sorutil;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 // ConstantInput is a singleton that manages the Joystick inputs to the program,
 // allowing for "constant" declarations of Joystick buttons and axes.
-public class ConstantInput {
-  private static final ConstantInput inst = new ConstantInput();  
+//
+// The axes and buttons of every joystick used by a ConstantAxis or ConstantButton are read from the driver station
+// once per cycle into a snapshot, which their suppliers read from. This keeps inputs consistent for the whole cycle,
+// e.g. a command and the trigger that scheduled it always agree on whether a button is pressed, and makes each read a
+// couple of array loads rather than a call into the driver station. The Joysticks from lazyJoy(), and so the triggers
+// from ConstantButton.get(), read their axes and buttons from the same snapshot.
+//
+// The suppliers and lazyJoy() are safe to use from any thread, e.g. from a high-rate control loop. Snapshots are taken
+// under a lock, and read without one: each snapshot has a sequence number that is odd while it's being written, so a
+// reader on another thread can detect and retry a torn read.
+public class ConstantInput extends SubsystemBase {
+  private static final ConstantInput inst = new ConstantInput();
 
-  private final Map<Integer, Joystick> joys = new HashMap<>();
+  // The most axes the driver station sends for a single joystick.
+  static final int MAX_AXES = 12;
+
+  // Indexed by port. Created lazily, and published with compareAndSet so that every thread gets the same Joystick.
+  private final AtomicReferenceArray<Joystick> joys = new AtomicReferenceArray<>(DriverStation.kJoystickPorts);
+
+  // Guarded by this.
+  private final boolean[] used = new boolean[DriverStation.kJoystickPorts];
+  // Two snapshots, so that a supplier polled from another thread rarely has to retry: the next snapshot is written into
+  // the buffer not being read, then published through the volatile field.
+  private final Snapshot[] snapshots = {new Snapshot(), new Snapshot()};
+  private volatile Snapshot current = snapshots[0];
+  private volatile boolean captured;
 
   public static ConstantInput get() {
     return inst;
   }
 
+  /**
+   * The Joystick on the given port, created the first time it's needed. Safe to call from any thread.
+   *
+   * <p>
+   * Its raw axes and buttons, and everything derived from them such as getX(), are read from the current snapshot. The
+   * rest, e.g. the POV hat and getRawButtonPressed(), read the driver station directly.
+   * </p>
+   */
   public Joystick lazyJoy(int idx) {
-    if (!joys.containsKey(idx)) {
-      joys.put(idx, new Joystick(idx));
+    checkPort(idx);
+    Joystick joy = joys.get(idx);
+    if (joy != null) {
+      return joy;
     }
 
+    use(idx);
+    // If another thread got there first, use its Joystick and drop this one.
+    Joystick created = new SnapshotJoystick(idx);
+    if (joys.compareAndSet(idx, null, created)) {
+      return created;
+    }
     return joys.get(idx);
   }
+
+  // Because this is a subsystem, this method will be called by the command scheduler at the start of every cycle,
+  // before triggers are polled and commands run.
+  @Override
+  public void periodic() {
+    snapshot();
+  }
+
+  /**
+   * Reads the axes and buttons of every joystick in use from the driver station. Called automatically at the start of
+   * every cycle; only needs calling directly if inputs are read outside the command scheduler.
+   */
+  public synchronized void snapshot() {
+    Snapshot next = current == snapshots[0] ? snapshots[1] : snapshots[0];
+    next.begin();
+    for (int stick = 0; stick < used.length; stick++) {
+      if (used[stick]) {
+        next.capture(stick);
+      }
+    }
+    next.end();
+    current = next;
+    captured = true;
+  }
+
+  /**
+   * Marks a joystick as in use, so that it's included in every snapshot from now on. Called by ConstantAxis and
+   * ConstantButton when they're created.
+   */
+  synchronized void use(int stick) {
+    checkPort(stick);
+    if (used[stick]) {
+      return;
+    }
+    used[stick] = true;
+    if (captured) {
+      // Don't leave the joystick reading zero until the next cycle.
+      snapshot();
+    }
+  }
+
+  /**
+   * The value of an axis in the current snapshot, or 0 if the joystick doesn't have that axis.
+   */
+  public double axis(int stick, int idx) {
+    if (!captured) {
+      firstSnapshot();
+    }
+    while (true) {
+      Snapshot snapshot = current;
+      int sequence = snapshot.sequence;
+      double value = snapshot.axis(stick, idx);
+      if (snapshot.unchanged(sequence)) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * The state of a button in the current snapshot. As with Joystick.getRawButton(), buttons are numbered from 1.
+   */
+  public boolean button(int stick, int idx) {
+    if (!captured) {
+      firstSnapshot();
+    }
+    while (true) {
+      Snapshot snapshot = current;
+      int sequence = snapshot.sequence;
+      boolean value = snapshot.button(stick, idx);
+      if (snapshot.unchanged(sequence)) {
+        return value;
+      }
+    }
+  }
+
+  // Inputs read before the scheduler first runs, e.g. while the robot is being constructed, take a snapshot first.
+  private synchronized void firstSnapshot() {
+    if (!captured) {
+      snapshot();
+    }
+  }
+
+  private static void checkPort(int stick) {
+    if (stick < 0 || stick >= DriverStation.kJoystickPorts) {
+      throw new IllegalArgumentException(
+          "joystick port must be between 0 and " + (DriverStation.kJoystickPorts - 1) + ", got: " + stick);
+    }
+  }
+
+  private final class SnapshotJoystick extends Joystick {
+    private final int stick;
+
+    SnapshotJoystick(int stick) {
+      super(stick);
+      this.stick = stick;
+    }
+
+    @Override
+    public double getRawAxis(int axis) {
+      return axis(stick, axis);
+    }
+
+    @Override
+    public boolean getRawButton(int button) {
+      return button(stick, button);
+    }
+  }
+
+  private static final class Snapshot {
+    private final double[][] axes = new double[DriverStation.kJoystickPorts][MAX_AXES];
+    private final int[] axisCounts = new int[DriverStation.kJoystickPorts];
+    // Bit n is button n + 1, as returned by the driver station.
+    private final int[] buttons = new int[DriverStation.kJoystickPorts];
+    // Odd while the snapshot is being written. Only written with ConstantInput's lock held.
+    private volatile int sequence;
+
+    void begin() {
+      sequence++;
+      // Keep the writes to the snapshot from being reordered before the sequence number is made odd.
+      VarHandle.storeStoreFence();
+    }
+
+    void end() {
+      sequence++;
+    }
+
+    /**
+     * Whether the snapshot was complete, and hasn't been written to, since sequence was read.
+     */
+    boolean unchanged(int sequence) {
+      // Keep the reads of the snapshot from being reordered after the sequence number is read again.
+      VarHandle.loadLoadFence();
+      return (sequence & 1) == 0 && sequence == this.sequence;
+    }
+
+    void capture(int stick) {
+      double[] values = axes[stick];
+      int count = Math.min(DriverStation.getStickAxisCount(stick), MAX_AXES);
+      for (int i = 0; i < count; i++) {
+        values[i] = DriverStation.getStickAxis(stick, i);
+      }
+      axisCounts[stick] = count;
+      buttons[stick] = DriverStation.getStickButtons(stick);
+    }
+
+    double axis(int stick, int idx) {
+      if (idx < 0 || idx >= axisCounts[stick]) {
+        return 0;
+      }
+      return axes[stick][idx];
+    }
+
+    boolean button(int stick, int idx) {
+      if (idx < 1 || idx > Integer.SIZE) {
+        return false;
+      }
+      return (buttons[stick] & (1 << (idx - 1))) != 0;
+    }
+  }
 }
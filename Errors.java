@@ -1,10 +1,84 @@
 package frc.sorutil;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import com.ctre.phoenix.ErrorCode;
 import com.revrobotics.REVLibError;
 
+/**
+ * Errors handles the error codes returned by motor controller calls. Errors are counted per device (i.e. logger),
+ * error code and description, and logged at a bounded rate: the first occurrence is logged immediately, and repeats
+ * are summarized in a single line at most once per report interval. This keeps a device that drops off the bus from
+ * flooding the console from every tick(). Repeats are summarized by the next error of the same kind once the interval
+ * has passed, or by {@link #reportDue()}, which the MotorManager calls every cycle, so that the repeats of an error that
+ * has stopped occurring are still reported.
+ *
+ * <p>
+ * The OK path does no work beyond the comparison. Counts can be read with {@link #errorCounts()}, e.g. for a
+ * dashboard.
+ * </p>
+ */
 public class Errors {
+  private static final double DEFAULT_REPORT_INTERVAL = 5;
+
+  private static final Object lock = new Object();
+  // Logger -> description -> error -> count. Nested rather than keyed by a tuple, so that counting a repeat doesn't
+  // allocate.
+  private static final Map<Logger, Map<String, Map<Enum<?>, ErrorCount>>> counts = new HashMap<>();
+  private static final List<ErrorCount> countList = new ArrayList<>();
+  private static long reportIntervalNanos = (long) (DEFAULT_REPORT_INTERVAL * 1e9);
+  // Whether any count has repeats that haven't been reported, and the earliest time one of them is due. Volatile so
+  // that reportDue() can return without taking the lock.
+  private static volatile boolean pending;
+  private static volatile long nextDueNanos;
+
+  /**
+   * ErrorCount is the number of times a single error has occurred on a single device.
+   */
+  public static final class ErrorCount {
+    private final Logger logger;
+    private final String device;
+    private final String error;
+    private final String description;
+
+    private volatile long total;
+    private long sinceReport;
+    private long lastReportNanos;
+
+    private ErrorCount(Logger logger, Enum<?> error, String description) {
+      this.logger = logger;
+      this.device = logger.getName();
+      this.error = error.name();
+      this.description = description;
+    }
+
+    /**
+     * The name of the logger the error was reported to, which identifies the device.
+     */
+    public String device() {
+      return device;
+    }
+
+    public String error() {
+      return error;
+    }
+
+    public String description() {
+      return description;
+    }
+
+    /**
+     * The number of times the error has occurred.
+     */
+    public long total() {
+      return total;
+    }
+  }
+
   public static void handleCtre(ErrorCode e, Logger l) {
     handleCtre(e, l, null);
   }
@@ -13,12 +87,7 @@ public class Errors {
     if (e == ErrorCode.OK) {
       return;
     }
-
-    if (desc != null && desc != "") {
-      l.warning("Error in motor controller: " + e.name() + ": " + desc);
-    } else {
-      l.warning("Error in motor controller: " + e.name());
-    }
+    record(e, l, desc);
   }
 
   public static void handleRev(REVLibError e, Logger l) {
@@ -29,12 +98,160 @@ public class Errors {
     if (e == REVLibError.kOk) {
       return;
     }
+    record(e, l, desc);
+  }
+
+  /**
+   * Sets the shortest time between log lines for repeats of the same error. Defaults to 5 seconds.
+   */
+  public static void setReportInterval(double seconds) {
+    synchronized (lock) {
+      reportIntervalNanos = (long) (seconds * 1e9);
+      // Due times change with the interval, so have the next reportDue() look at every count.
+      nextDueNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Every error counted so far, in the order they first occurred.
+   */
+  public static List<ErrorCount> errorCounts() {
+    synchronized (lock) {
+      return Collections.unmodifiableList(new ArrayList<>(countList));
+    }
+  }
+
+  /**
+   * The total number of errors counted so far, across all devices.
+   */
+  public static long totalErrors() {
+    synchronized (lock) {
+      long total = 0;
+      for (ErrorCount count : countList) {
+        total += count.total;
+      }
+      return total;
+    }
+  }
+
+  /**
+   * Logs a summary of every error that has repeated since it was last logged, regardless of the report interval.
+   */
+  public static void logSummary() {
+    summarize(false);
+  }
+
+  /**
+   * Logs a summary of every error that has repeated since it was last logged, and was last logged at least a report
+   * interval ago. Cheap enough to call every cycle: unless a summary is due, it's a volatile read and, if errors have
+   * repeated, a call to System.nanoTime(). Called by the MotorManager at the start of every cycle.
+   */
+  public static void reportDue() {
+    if (!pending || System.nanoTime() - nextDueNanos < 0) {
+      return;
+    }
+    summarize(true);
+  }
+
+  private static void summarize(boolean onlyDue) {
+    List<ErrorCount> repeated = new ArrayList<>();
+    List<String> messages = new ArrayList<>();
+    synchronized (lock) {
+      long now = System.nanoTime();
+      boolean stillPending = false;
+      long nextDue = 0;
+      for (ErrorCount count : countList) {
+        if (count.sinceReport == 0) {
+          continue;
+        }
+        long due = count.lastReportNanos + reportIntervalNanos;
+        if (onlyDue && now - due < 0) {
+          if (!stillPending || due - nextDue < 0) {
+            nextDue = due;
+          }
+          stillPending = true;
+          continue;
+        }
+        repeated.add(count);
+        messages.add(report(count, now));
+      }
+      nextDueNanos = nextDue;
+      pending = stillPending;
+    }
+    for (int i = 0; i < repeated.size(); i++) {
+      repeated.get(i).logger.warning(messages.get(i));
+    }
+  }
+
+  /**
+   * Forgets every error counted so far.
+   */
+  public static void reset() {
+    synchronized (lock) {
+      counts.clear();
+      countList.clear();
+      pending = false;
+    }
+  }
+
+  private static void record(Enum<?> e, Logger l, String desc) {
+    if (desc == null) {
+      desc = "";
+    }
+
+    ErrorCount count;
+    String message;
+    // Only count under the lock, so that other threads reporting errors never wait on logging I/O.
+    synchronized (lock) {
+      var byDescription = counts.get(l);
+      if (byDescription == null) {
+        byDescription = new HashMap<>();
+        counts.put(l, byDescription);
+      }
+      var byError = byDescription.get(desc);
+      if (byError == null) {
+        byError = new HashMap<>();
+        byDescription.put(desc, byError);
+      }
+      count = byError.get(e);
+
+      long now = System.nanoTime();
+      if (count == null) {
+        count = new ErrorCount(l, e, desc);
+        byError.put(e, count);
+        countList.add(count);
+        count.total = 1;
+        count.lastReportNanos = now;
+        message = message(count, "");
+      } else {
+        count.total++;
+        count.sinceReport++;
+        if (now - count.lastReportNanos < reportIntervalNanos) {
+          long due = count.lastReportNanos + reportIntervalNanos;
+          if (!pending || due - nextDueNanos < 0) {
+            nextDueNanos = due;
+          }
+          pending = true;
+          return;
+        }
+        message = report(count, now);
+      }
+    }
+    l.warning(message);
+  }
+
+  private static String report(ErrorCount count, long now) {
+    String message = message(count, String.format(" (repeated %d times in %.1fs, %d total)", count.sinceReport,
+        (now - count.lastReportNanos) / 1e9, count.total));
+    count.sinceReport = 0;
+    count.lastReportNanos = now;
+    return message;
+  }
 
-    if (desc != null && desc != "") {
-      l.warning("Error in motor controller: " + e.name() + ": " + desc);
-    } else {
-      l.warning("Error in motor controller: " + e.name());
+  private static String message(ErrorCount count, String suffix) {
+    if (!count.description.isEmpty()) {
+      return "Error in motor controller: " + count.error + ": " + count.description + suffix;
     }
+    return "Error in motor controller: " + count.error + suffix;
   }
-  
 }
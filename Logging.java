@@ -3,7 +3,9 @@ package frc.sorutil;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.logging.Handler;
 import java.util.logging.LogManager;
+import java.util.logging.Logger;
 import edu.wpi.first.wpilibj.Filesystem;
 
 public class Logging {
@@ -12,8 +14,9 @@ public class Logging {
       File dir = Filesystem.getDeployDirectory();
       if (dir.isDirectory()) {
         String logFile = dir.getAbsolutePath() + "/logging.properties";
-        FileInputStream configFile = new FileInputStream(logFile);
-        LogManager.getLogManager().readConfiguration(configFile);
+        try (FileInputStream configFile = new FileInputStream(logFile)) {
+          LogManager.getLogManager().readConfiguration(configFile);
+        }
         System.out.println("---- Logging Initialized ----");
       } else {
         throw new IOException("Failed to find log file config.");
@@ -22,5 +25,18 @@ public class Logging {
       System.out.println("WARNING: Could not open configuration file");
       System.out.println("WARNING: Logging not configured (console output only)");
     }
-  } 
+  }
+
+  /**
+   * The number of log records dropped by any {@link AsyncHandler} on the root logger because its queue was full.
+   */
+  public static long droppedRecords() {
+    long total = 0;
+    for (Handler handler : Logger.getLogger("").getHandlers()) {
+      if (handler instanceof AsyncHandler) {
+        total += ((AsyncHandler) handler).droppedRecords();
+      }
+    }
+    return total;
+  }
 }
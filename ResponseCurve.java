@@ -1,9 +1,10 @@
 package frc.sorutil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
- * NOTE: This code doesn't really work, it requires that the user compute curves on their own that line up, which seems
- * like it isn't the ideal solution. I'll need to come back and rewrite this completely.
- * 
  * ResponseCurve (and its contained classes) help to define a function that relates one input value to a single output
  * value. Generally, input values are expected to be in the range (-1, 1), outputs can either be the raw output of the
  * function or optionally capped to (-1, 1) using "cap()".
@@ -16,6 +17,18 @@ package frc.sorutil;
  * <li>Mirrored function, where the input's absolute value is taken <b>and</b> the function's output's sign is matched
  * to the input before processing, effectively mirroring the function about the X- and Y-axes</li>
  * </ul>
+ * 
+ * <p>
+ * Curves made of multiple ranges should be created with {@link Builder}, which scales and offsets each function so that
+ * it lines up with the previous one in both value and slope at the start of its range. Constructing a curve directly
+ * from FunctionRanges uses the functions as given, so they must already line up.
+ * </p>
+ * 
+ * <p>
+ * Evaluating a curve walks the ranges and calls into the function for every input. For curves that are evaluated every
+ * loop, such as joystick shaping, {@link #compile(int)} samples the curve once into a table so that each evaluation is
+ * just a table index and a linear interpolation.
+ * </p>
  */
 public class ResponseCurve {
   public static interface Function {
@@ -27,6 +40,19 @@ public class ResponseCurve {
      */
     public double eval(double x);
 
+    /**
+     * Evaluates the function for every value of in, writing f(x) into the same position of out. Implementations should
+     * override this with a loop that avoids the per-value virtual call where possible.
+     * 
+     * @param in the values of x
+     * @param out receives f(x) for each value, must be at least as long as in
+     */
+    public default void eval(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = eval(in[i]);
+      }
+    }
+
     /**
      * Evalutes the slope of a function at a given value, must never error. Discontinuities should be either 0 or
      * DOUBLE_MAX.
@@ -43,6 +69,53 @@ public class ResponseCurve {
      * @return whether the function is valid negative.
      */
     public boolean signValid();
+
+    /**
+     * Returns a function equal to scale * f(x) + offset. Functions that can fold the scale and offset into their own
+     * coefficients should override this, so that the returned function costs no more to evaluate than the original.
+     * 
+     * @param scale multiplier applied to the output
+     * @param offset constant added to the output after scaling
+     * @return the scaled function
+     */
+    public default Function scaled(double scale, double offset) {
+      return new Scaled(this, scale, offset);
+    }
+  }
+
+  /**
+   * Scaled wraps another function, computing scale * f(x) + offset. Used for functions that can't fold a scale and
+   * offset into their own coefficients.
+   */
+  public static class Scaled implements Function {
+    private final Function f;
+    private final double scale, offset;
+
+    public Scaled(Function f, double scale, double offset) {
+      this.f = f;
+      this.scale = scale;
+      this.offset = offset;
+    }
+
+    @Override
+    public double eval(double x) {
+      return scale * f.eval(x) + offset;
+    }
+
+    @Override
+    public double slope(double x) {
+      return scale * f.slope(x);
+    }
+
+    @Override
+    public boolean signValid() {
+      return f.signValid();
+    }
+
+    @Override
+    public Function scaled(double scale, double offset) {
+      return new Scaled(f, this.scale * scale, this.offset * scale + offset);
+    }
   }
 
   /**
@@ -69,11 +142,26 @@ public class ResponseCurve {
       return (a * x * x) + (b * x) + c;
     }
 
+    @Override
+    public void eval(double[] in, double[] out) {
+      // Copy the coefficients into locals so the loop body is free of field loads and can be vectorized by the JIT.
+      double a = this.a, b = this.b, c = this.c;
+      for (int i = 0; i < in.length; i++) {
+        double x = in[i];
+        out[i] = (a * x * x) + (b * x) + c;
+      }
+    }
+
     @Override
     public double slope(double x) {
       return (2 * a * x) + b;
     }
 
+    @Override
+    public Function scaled(double scale, double offset) {
+      return new Quadratic(a * scale, b * scale, c * scale + offset);
+    }
+
     @Override
     public boolean signValid() {
       return true;
@@ -106,18 +194,32 @@ public class ResponseCurve {
       return (a * x * x * x) + (b * x * x) + (c * x) + d;
     }
 
+    @Override
+    public void eval(double[] in, double[] out) {
+      double a = this.a, b = this.b, c = this.c, d = this.d;
+      for (int i = 0; i < in.length; i++) {
+        double x = in[i];
+        out[i] = (a * x * x * x) + (b * x * x) + (c * x) + d;
+      }
+    }
+
     @Override
     public double slope(double x) {
       return (3 * a * x * x) + (2 * b * x) + c;
     }
 
+    @Override
+    public Function scaled(double scale, double offset) {
+      return new Cubic(a * scale, b * scale, c * scale, d * scale + offset);
+    }
+
     @Override
     public boolean signValid() {
       return true;
     }
   }
 
-  public class Sqrt implements Function {
+  public static class Sqrt implements Function {
     @Override
     public double eval(double x) {
       return Math.sqrt(x);
@@ -130,7 +232,7 @@ public class ResponseCurve {
         return 0;
       }
 
-      return 1 / 2 * Math.sqrt(x);
+      return 1 / (2 * Math.sqrt(x));
     }
 
     @Override
@@ -166,6 +268,11 @@ public class ResponseCurve {
       return (a * f * Math.pow(x, f - 1d)) + b;
     }
 
+    @Override
+    public Function scaled(double scale, double offset) {
+      return new FractionalExponentPolynominal(a * scale, b * scale, c * scale + offset, f);
+    }
+
     @Override
     public boolean signValid() {
       return false;
@@ -195,6 +302,8 @@ public class ResponseCurve {
   private final NegativeMode mode;
   private final FunctionRange[] ranges;
 
+  private boolean capped = false;
+
   public ResponseCurve(Function f) {
     this(f, NegativeMode.DIRECT);
   }
@@ -204,7 +313,246 @@ public class ResponseCurve {
   }
 
   public ResponseCurve(FunctionRange[] ranges, NegativeMode mode) {
+    if (ranges.length == 0) {
+      throw new IllegalArgumentException("ResponseCurve requires at least one range");
+    }
     this.mode = mode;
-    this.ranges = ranges;
+    this.ranges = ranges.clone();
+    Arrays.sort(this.ranges, (l, r) -> Double.compare(l.start, r.start));
+  }
+
+  // A copy of the curve as it is now, unaffected by later calls to cap(). The ranges are never modified, so they're
+  // shared.
+  private ResponseCurve(ResponseCurve other) {
+    this.mode = other.mode;
+    this.ranges = other.ranges;
+    this.capped = other.capped;
+  }
+
+  /**
+   * Builder creates a ResponseCurve from a sequence of functions and the breakpoints at which each one takes over from
+   * the previous one. Every function after the first is scaled and offset so that its value and slope at its breakpoint
+   * match those of the function before it, making the whole curve C1-continuous. The first function is used as given.
+   * 
+   * <pre>
+   * // Gentle quadratic near the center, switching to a steeper cubic past half stick.
+   * var curve = new ResponseCurve.Builder(new ResponseCurve.Quadratic(0.5, 0.1, 0))
+   *     .then(0.5, new ResponseCurve.Cubic(1, 0, 0, 0))
+   *     .mode(ResponseCurve.NegativeMode.MIRROR)
+   *     .cap()
+   *     .build();
+   * </pre>
+   * 
+   * <p>
+   * The scale and offset are folded into the coefficients of the polynomial functions, so a stitched curve costs the
+   * same to evaluate as an unstitched one. A function whose slope at its breakpoint is zero can only be stitched onto a
+   * function that is also flat there, as no scale would make the slopes match.
+   * </p>
+   */
+  public static class Builder {
+    private final List<FunctionRange> ranges = new ArrayList<>();
+    private NegativeMode mode = NegativeMode.DIRECT;
+    private boolean capped = false;
+
+    public Builder(Function first) {
+      ranges.add(new FunctionRange(first));
+    }
+
+    /**
+     * Adds a function that takes over at the given breakpoint. Breakpoints must be added in increasing order.
+     */
+    public Builder then(double breakpoint, Function f) {
+      FunctionRange previous = ranges.get(ranges.size() - 1);
+      if (!(breakpoint > previous.start)) {
+        throw new IllegalArgumentException("breakpoints must be strictly increasing, got " + breakpoint);
+      }
+
+      double value = previous.f.eval(breakpoint);
+      double slope = previous.f.slope(breakpoint);
+      double ownSlope = f.slope(breakpoint);
+
+      double scale;
+      if (SorMath.epsilonEquals(ownSlope, 0)) {
+        if (!SorMath.epsilonEquals(slope, 0)) {
+          throw new IllegalArgumentException(
+              "can't match slope at breakpoint " + breakpoint + ", function is flat but the previous one is not");
+        }
+        scale = 1;
+      } else {
+        scale = slope / ownSlope;
+      }
+      double offset = value - scale * f.eval(breakpoint);
+
+      ranges.add(new FunctionRange(breakpoint, f.scaled(scale, offset)));
+      return this;
+    }
+
+    public Builder mode(NegativeMode mode) {
+      this.mode = mode;
+      return this;
+    }
+
+    public Builder cap() {
+      this.capped = true;
+      return this;
+    }
+
+    public ResponseCurve build() {
+      var curve = new ResponseCurve(ranges.toArray(new FunctionRange[0]), mode);
+      if (capped) {
+        curve.cap();
+      }
+      return curve;
+    }
+  }
+
+  /**
+   * Caps the output of this curve to the range [-1, 1].
+   * 
+   * @return this curve, for chaining
+   */
+  public ResponseCurve cap() {
+    capped = true;
+    return this;
+  }
+
+  /**
+   * Evaluates the curve for the given input, applying the negative mode, selecting the range that the input falls into,
+   * and capping the output if requested.
+   * 
+   * @param x the input, generally expected to be in the range [-1, 1]
+   * @return the output of the curve
+   */
+  public double eval(double x) {
+    double y;
+    switch (mode) {
+      case ABSOLUTE:
+        y = evalRanges(Math.abs(x));
+        break;
+      case MIRROR:
+        y = x < 0 ? -evalRanges(-x) : evalRanges(x);
+        break;
+      case DIRECT:
+      default:
+        y = evalRanges(x);
+        break;
+    }
+
+    if (capped) {
+      y = Math.max(-1, Math.min(1, y));
+    }
+    return y;
+  }
+
+  /**
+   * Evaluates the curve for every value of in, writing the results into the same positions of out.
+   * 
+   * @param in the inputs
+   * @param out receives the outputs, must be at least as long as in
+   */
+  public void eval(double[] in, double[] out) {
+    for (int i = 0; i < in.length; i++) {
+      out[i] = eval(in[i]);
+    }
+  }
+
+  private double evalRanges(double x) {
+    // Ranges are sorted by start, use the last one that starts at or before the input. Inputs before the first range
+    // use the first range.
+    int i = ranges.length - 1;
+    while (i > 0 && ranges[i].start > x) {
+      i--;
+    }
+    return ranges[i].f.eval(x);
+  }
+
+  /**
+   * Samples this curve into a table over [-1, 1] with the given number of intervals. Evaluating the returned
+   * Compiled curve costs a single table index and a linear interpolation regardless of how expensive the underlying
+   * functions are, at the cost of some accuracy, which can be checked with {@link Compiled#maxError(int)}.
+   * 
+   * <p>
+   * Changes made to this curve (e.g. cap()) after compiling are not reflected in the compiled curve.
+   * </p>
+   * 
+   * @param resolution the number of intervals in the table, e.g. 1024
+   */
+  public Compiled compile(int resolution) {
+    return new Compiled(new ResponseCurve(this), resolution);
+  }
+
+  /**
+   * Compiled is a ResponseCurve that has been sampled into a dense table over [-1, 1]. Inputs outside of [-1, 1] fall
+   * back to evaluating a copy of the original curve, taken when it was compiled.
+   */
+  public static final class Compiled {
+    private static final double MIN = -1;
+    private static final double MAX = 1;
+
+    private final ResponseCurve curve;
+    private final double[] table;
+    private final double scale;
+
+    private Compiled(ResponseCurve curve, int resolution) {
+      if (resolution < 1) {
+        throw new IllegalArgumentException("resolution must be at least 1");
+      }
+      this.curve = curve;
+      this.scale = resolution / (MAX - MIN);
+
+      // One extra entry so that the interpolation at the top of the last interval doesn't read past the table.
+      table = new double[resolution + 2];
+      for (int i = 0; i <= resolution; i++) {
+        table[i] = curve.eval(MIN + i / scale);
+      }
+      table[resolution + 1] = table[resolution];
+    }
+
+    /**
+     * Evaluates the compiled curve for the given input.
+     * 
+     * @param x the input, generally expected to be in the range [-1, 1]
+     * @return the output of the curve
+     */
+    public double eval(double x) {
+      if (!(x >= MIN && x <= MAX)) {
+        return curve.eval(x);
+      }
+      double position = (x - MIN) * scale;
+      int i = (int) position;
+      double fraction = position - i;
+      return table[i] + (table[i + 1] - table[i]) * fraction;
+    }
+
+    /**
+     * Evaluates the compiled curve for every value of in, writing the results into the same positions of out.
+     * 
+     * @param in the inputs
+     * @param out receives the outputs, must be at least as long as in
+     */
+    public void eval(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = eval(in[i]);
+      }
+    }
+
+    /**
+     * Measures the largest absolute difference between the compiled and original curves, probing the given number of
+     * evenly spaced points over [-1, 1]. Intended to be used when choosing a resolution, not in periodic code.
+     * 
+     * @param probes the number of points to compare, should be much larger than the resolution
+     * @return the largest error found
+     */
+    public double maxError(int probes) {
+      double max = 0;
+      for (int i = 0; i <= probes; i++) {
+        double x = MIN + (MAX - MIN) * i / probes;
+        double error = Math.abs(eval(x) - curve.eval(x));
+        if (error > max) {
+          max = error;
+        }
+      }
+      return max;
+    }
   }
 }
@@ -0,0 +1,100 @@
+package frc.sorutil;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RingBuffer is a bounded, lock-free queue that is safe for any number of producers and consumers. Neither offer() nor
+ * poll() ever blocks or allocates: when the buffer is full, offer() fails and it's up to the caller what to do.
+ *
+ * <p>
+ * Each slot carries a sequence number which tells a producer when the slot is free to write, and a consumer when it
+ * holds a published item, so a thread claiming a slot with a single compare-and-set never sees it half written.
+ * </p>
+ */
+final class RingBuffer<T> {
+  private final int mask;
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  // The position of the next item to poll, and of the next slot to offer into.
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity the minimum number of items the buffer can hold, rounded up to a power of two
+   */
+  RingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30, got: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    mask = size - 1;
+    items = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an item to the buffer, returning false if it is full.
+   */
+  boolean offer(T item) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          items.set(index, item);
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // The slot still holds the item from a lap ago.
+        return false;
+      } else {
+        // Another producer claimed the slot first.
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest item from the buffer, returning null if it is empty.
+   */
+  T poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          T item = items.get(index);
+          items.set(index, null);
+          sequences.set(index, pos + mask + 1);
+          return item;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
@@ -16,6 +16,195 @@ public class SorMath {
     return new double[] {r * Math.cos(theta), r * Math.sin(theta)};
   }
 
+  /**
+   * cartesianToPolar converts (x, y) to (r, theta) with theta in degrees, writing the result into out instead of
+   * allocating a new array. out[0] receives r, out[1] receives theta.
+   */
+  public static void cartesianToPolar(double x, double y, double[] out) {
+    out[0] = Math.sqrt(x * x + y * y);
+    out[1] = (Math.atan2(y, x) * 180) / Math.PI;
+  }
+
+  /**
+   * polarToCartesian converts (r, theta) with theta in degrees to (x, y), writing the result into out instead of
+   * allocating a new array. out[0] receives x, out[1] receives y.
+   */
+  public static void polarToCartesian(double r, double theta, double[] out) {
+    theta = (theta / 180) * Math.PI;
+    out[0] = r * Math.cos(theta);
+    out[1] = r * Math.sin(theta);
+  }
+
+  /**
+   * cartesianToPolarRadians converts (x, y) to (r, theta) with theta in radians, skipping the conversion to degrees.
+   * out[0] receives r, out[1] receives theta.
+   */
+  public static void cartesianToPolarRadians(double x, double y, double[] out) {
+    out[0] = Math.sqrt(x * x + y * y);
+    out[1] = Math.atan2(y, x);
+  }
+
+  /**
+   * polarToCartesianRadians converts (r, theta) with theta in radians to (x, y), skipping the conversion from degrees.
+   * out[0] receives x, out[1] receives y.
+   */
+  public static void polarToCartesianRadians(double r, double theta, double[] out) {
+    out[0] = r * Math.cos(theta);
+    out[1] = r * Math.sin(theta);
+  }
+
+  /**
+   * Batch version of cartesianToPolar, converting every (x[i], y[i]) into (r[i], theta[i]) with theta in degrees. The
+   * output arrays must be at least as long as the inputs, and may be the same arrays as the inputs.
+   */
+  public static void cartesianToPolar(double[] x, double[] y, double[] r, double[] theta) {
+    for (int i = 0; i < x.length; i++) {
+      double xi = x[i];
+      double yi = y[i];
+      r[i] = Math.sqrt(xi * xi + yi * yi);
+      theta[i] = (Math.atan2(yi, xi) * 180) / Math.PI;
+    }
+  }
+
+  /**
+   * Batch version of polarToCartesian, converting every (r[i], theta[i]) with theta in degrees into (x[i], y[i]). The
+   * output arrays must be at least as long as the inputs, and may be the same arrays as the inputs.
+   */
+  public static void polarToCartesian(double[] r, double[] theta, double[] x, double[] y) {
+    for (int i = 0; i < r.length; i++) {
+      double ri = r[i];
+      double t = (theta[i] / 180) * Math.PI;
+      x[i] = ri * Math.cos(t);
+      y[i] = ri * Math.sin(t);
+    }
+  }
+
+  /**
+   * Batch version of cartesianToPolarRadians, converting every (x[i], y[i]) into (r[i], theta[i]) with theta in
+   * radians.
+   */
+  public static void cartesianToPolarRadians(double[] x, double[] y, double[] r, double[] theta) {
+    for (int i = 0; i < x.length; i++) {
+      double xi = x[i];
+      double yi = y[i];
+      r[i] = Math.sqrt(xi * xi + yi * yi);
+      theta[i] = Math.atan2(yi, xi);
+    }
+  }
+
+  /**
+   * Batch version of polarToCartesianRadians, converting every (r[i], theta[i]) with theta in radians into (x[i],
+   * y[i]).
+   */
+  public static void polarToCartesianRadians(double[] r, double[] theta, double[] x, double[] y) {
+    for (int i = 0; i < r.length; i++) {
+      double ri = r[i];
+      double t = theta[i];
+      x[i] = ri * Math.cos(t);
+      y[i] = ri * Math.sin(t);
+    }
+  }
+
+  // ---- Fast approximate math ----
+  //
+  // The following are opt-in replacements for the java.lang.Math trig functions, which are comparatively expensive on
+  // the roboRIO. Each documents its maximum absolute error; use the Math versions where that isn't acceptable. There
+  // is no fast sqrt, as Math.sqrt is already compiled down to a single hardware instruction.
+
+  private static final int SIN_TABLE_BITS = 12;
+  private static final int SIN_TABLE_SIZE = 1 << SIN_TABLE_BITS;
+  private static final int SIN_TABLE_MASK = SIN_TABLE_SIZE - 1;
+  private static final double SIN_TABLE_SCALE = SIN_TABLE_SIZE / (2 * Math.PI);
+
+  // Held in its own class so that the table is only built the first time a fast function is used.
+  private static class SinTable {
+    // One extra entry so that interpolating the last interval doesn't need to wrap.
+    static final double[] TABLE = new double[SIN_TABLE_SIZE + 1];
+    static {
+      for (int i = 0; i <= SIN_TABLE_SIZE; i++) {
+        TABLE[i] = Math.sin(i / SIN_TABLE_SCALE);
+      }
+    }
+  }
+
+  /**
+   * fastSin approximates Math.sin using a 4096 entry table with linear interpolation. The maximum absolute error is
+   * 3e-7. Accuracy degrades for very large inputs (beyond roughly 1e9 radians) due to range reduction, as angles in
+   * that range have lost most of their precision anyway.
+   *
+   * @param x angle in radians
+   */
+  public static double fastSin(double x) {
+    return tableLookup(x * SIN_TABLE_SCALE, 0);
+  }
+
+  /**
+   * fastCos approximates Math.cos using the same table as fastSin, with the same maximum absolute error of 3e-7.
+   *
+   * @param x angle in radians
+   */
+  public static double fastCos(double x) {
+    return tableLookup(x * SIN_TABLE_SCALE, SIN_TABLE_SIZE / 4);
+  }
+
+  private static double tableLookup(double position, int offset) {
+    long whole = (long) position;
+    if (position < whole) {
+      whole--;
+    }
+    double fraction = position - whole;
+    int i = (int) ((whole + offset) & SIN_TABLE_MASK);
+    double[] table = SinTable.TABLE;
+    return table[i] + (table[i + 1] - table[i]) * fraction;
+  }
+
+  /**
+   * fastAtan2 approximates Math.atan2 using a polynomial approximation of atan over [0, 1] (Abramowitz and Stegun
+   * 4.4.49) and octant symmetry. The maximum absolute error is 2e-8 radians. Unlike Math.atan2, the sign of zero is not
+   * considered, so fastAtan2(-0.0, -1) returns pi rather than -pi.
+   *
+   * @return the angle of (x, y) in radians, in the range [-pi, pi]
+   */
+  public static double fastAtan2(double y, double x) {
+    double ax = Math.abs(x);
+    double ay = Math.abs(y);
+    double max = Math.max(ax, ay);
+    if (max == 0) {
+      return 0;
+    }
+    double z = Math.min(ax, ay) / max;
+    double z2 = z * z;
+    double a = z * (1 + z2 * (-0.3333314528 + z2 * (0.1999355085 + z2 * (-0.1420889944 + z2 * (0.1065626393
+        + z2 * (-0.0752896400 + z2 * (0.0429096138 + z2 * (-0.0161657367 + z2 * 0.0028662257))))))));
+
+    if (ay > ax) {
+      a = (Math.PI / 2) - a;
+    }
+    if (x < 0) {
+      a = Math.PI - a;
+    }
+    if (y < 0) {
+      a = -a;
+    }
+    return a;
+  }
+
+  /**
+   * Variant of cartesianToPolarRadians that uses fastAtan2, see it for error bounds.
+   */
+  public static void fastCartesianToPolarRadians(double x, double y, double[] out) {
+    out[0] = Math.sqrt(x * x + y * y);
+    out[1] = fastAtan2(y, x);
+  }
+
+  /**
+   * Variant of polarToCartesianRadians that uses fastCos and fastSin, see them for error bounds.
+   */
+  public static void fastPolarToCartesianRadians(double r, double theta, double[] out) {
+    out[0] = r * fastCos(theta);
+    out[1] = r * fastSin(theta);
+  }
+
   /**
    * epsilonEquals determines whether two floats are approximately equal.
    */
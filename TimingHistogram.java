@@ -0,0 +1,151 @@
+package frc.sorutil;
+
+import java.util.Arrays;
+
+/**
+ * TimingHistogram records durations in nanoseconds into a fixed set of preallocated buckets, so that recording and
+ * reading never allocate. Buckets are log-linear: every power of two is split into 16 evenly sized buckets, so
+ * percentiles are accurate to within roughly 6% of the true value, across the full range from nanoseconds to minutes.
+ *
+ * <p>
+ * min, max and mean are exact. A TimingHistogram is not thread safe; it should be recorded to and read from the same
+ * thread, or externally synchronized.
+ * </p>
+ */
+public class TimingHistogram {
+  private static final int SUB_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Durations are capped at 2^40 ns, about 18 minutes, anything longer is counted in the last bucket.
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+  private long last;
+
+  /**
+   * Record a single duration.
+   *
+   * @param nanos the duration in nanoseconds, negative values are treated as zero
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts[bucket(nanos)]++;
+    count++;
+    sum += nanos;
+    last = nanos;
+    if (nanos < min) {
+      min = nanos;
+    }
+    if (nanos > max) {
+      max = nanos;
+    }
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+    last = 0;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  /**
+   * The shortest recorded duration in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public long min() {
+    return count == 0 ? 0 : min;
+  }
+
+  /**
+   * The longest recorded duration in nanoseconds.
+   */
+  public long max() {
+    return max;
+  }
+
+  /**
+   * The most recently recorded duration in nanoseconds.
+   */
+  public long last() {
+    return last;
+  }
+
+  /**
+   * The mean of all recorded durations in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public double mean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Estimates the given percentile of the recorded durations, as the upper bound of the bucket containing it (capped
+   * to the exact maximum).
+   *
+   * @param percentile a percentile from 0 to 100, e.g. 99
+   * @return the estimated duration in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(count * (percentile / 100.0));
+    if (target < 1) {
+      target = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(upperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Writes a summary into out, for copying the histogram somewhere else (e.g. to a dashboard) without allocating. The
+   * layout is {count, min, mean, p99, max}, all durations in nanoseconds.
+   *
+   * @param out an array of at least 5 elements
+   */
+  public void summary(double[] out) {
+    out[0] = count;
+    out[1] = min();
+    out[2] = mean();
+    out[3] = percentile(99);
+    out[4] = max;
+  }
+
+  private static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+    int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    int shift = exponent - SUB_BITS;
+    return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+}
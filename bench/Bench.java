@@ -0,0 +1,177 @@
+package frc.sorutil.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Bench is a small microbenchmark harness for the library's hot paths. It has no dependencies beyond the JDK, so it
+ * can be run anywhere the library itself runs, including on the roboRIO.
+ * 
+ * <p>
+ * Each case is warmed up until the JIT has had a chance to compile it, then measured over several rounds. Reported
+ * figures are the mean and best time per operation, and the bytes allocated per operation (when the JVM supports
+ * per-thread allocation counters, which HotSpot does).
+ * </p>
+ *
+ * <p>
+ * Each case is measured by its own copy of the loop that calls it, loaded through a class loader of its own, so that
+ * the JIT profiles the call to {@link Case#run()} separately for every case and can inline it. With a single shared
+ * loop the call would become megamorphic after the first few cases, and every later case would pay for a virtual call
+ * that earlier ones didn't. If the loop can't be copied, a shared one is used and a warning is printed.
+ * </p>
+ */
+public final class Bench {
+  /**
+   * Case is a single operation to measure. The return value is consumed by the harness so that the JIT can't remove
+   * the work as dead code.
+   */
+  public static interface Case {
+    public double run();
+  }
+
+  private static final long CALIBRATION_NANOS = 10_000_000L;
+  private static final long WARMUP_NANOS = 1_000_000_000L;
+  private static final long ROUND_NANOS = 200_000_000L;
+  private static final int ROUNDS = 5;
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private static volatile double sink;
+
+  private Bench() {}
+
+  /**
+   * Prints the header for a group of results.
+   */
+  public static void section(String name) {
+    System.out.println();
+    System.out.println("---- " + name + " ----");
+    System.out.println(String.format("%-56s %12s %12s %10s", "case", "mean ns/op", "best ns/op", "B/op"));
+  }
+
+  /**
+   * Measures and prints a single case.
+   */
+  public static void run(String name, Case c) {
+    Loop loop = isolatedLoop();
+
+    // Find an operation count that takes roughly a round to run.
+    long ops = 1;
+    long elapsed = 0;
+    while (elapsed < CALIBRATION_NANOS) {
+      ops *= 2;
+      long start = System.nanoTime();
+      sink = loop.run(c, ops);
+      elapsed = System.nanoTime() - start;
+    }
+    ops = Math.max(1, (long) (ops * ((double) ROUND_NANOS / elapsed)));
+
+    long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+    while (System.nanoTime() < warmupEnd) {
+      sink = loop.run(c, ops);
+    }
+
+    double best = Double.MAX_VALUE;
+    double total = 0;
+    long allocated = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      long bytesBefore = allocatedBytes();
+      long start = System.nanoTime();
+      sink = loop.run(c, ops);
+      long time = System.nanoTime() - start;
+      allocated += allocatedBytes() - bytesBefore;
+
+      double perOp = (double) time / ops;
+      best = Math.min(best, perOp);
+      total += perOp;
+    }
+
+    String bytes = "n/a";
+    if (allocatedBytes() >= 0) {
+      bytes = String.format("%.1f", (double) allocated / (ops * ROUNDS));
+    }
+    System.out.println(String.format("%-56s %12.2f %12.2f %10s", name, total / ROUNDS, best, bytes));
+  }
+
+  /**
+   * Loop calls a case repeatedly. Public, as it's implemented by classes defined by other class loaders, see
+   * isolatedLoop().
+   */
+  public static interface Loop {
+    public double run(Case c, long ops);
+  }
+
+  public static final class CaseLoop implements Loop {
+    @Override
+    public double run(Case c, long ops) {
+      double acc = 0;
+      for (long i = 0; i < ops; i++) {
+        acc += c.run();
+      }
+      return acc;
+    }
+  }
+
+  private static boolean sharedLoopWarned;
+
+  /**
+   * Returns a new copy of CaseLoop, defined by a class loader of its own so that none of its profile is shared.
+   */
+  private static Loop isolatedLoop() {
+    try {
+      return (Loop) new LoopLoader().loadClass(CaseLoop.class.getName()).getConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+      if (!sharedLoopWarned) {
+        sharedLoopWarned = true;
+        System.out.println("warning: measuring every case with a shared loop, results are biased by call order: " + e);
+      }
+      return new CaseLoop();
+    }
+  }
+
+  /**
+   * Defines its own copy of CaseLoop from the class file, and delegates every other class to Bench's class loader, so
+   * that Loop and Case are the same interfaces in both.
+   */
+  private static final class LoopLoader extends ClassLoader {
+    LoopLoader() {
+      super(Bench.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(CaseLoop.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          byte[] bytes = classFile(name);
+          loaded = defineClass(name, bytes, 0, bytes.length);
+        }
+        return loaded;
+      }
+    }
+
+    private static byte[] classFile(String name) throws ClassNotFoundException {
+      String resource = name.replace('.', '/') + ".class";
+      try (InputStream in = Bench.class.getClassLoader().getResourceAsStream(resource)) {
+        if (in == null) {
+          throw new ClassNotFoundException(name);
+        }
+        return in.readAllBytes();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+
+  private static long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
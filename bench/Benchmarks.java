@@ -0,0 +1,43 @@
+package frc.sorutil.bench;
+
+/**
+ * Benchmarks runs every benchmark suite and prints the results. Run it with the same classpath as robot code, e.g.
+ * 
+ * <pre>
+ * java -cp build/libs/... frc.sorutil.bench.Benchmarks [suite...]
+ * </pre>
+ * 
+ * where each suite is one of interpolation, sormath, responsecurve or motors. With no arguments, every suite is run. The
+ * motors suite constructs controllers and so needs the WPILib native libraries on the library path, the others only
+ * need the JDK.
+ *
+ * <p>
+ * The error bounds of SorMath's fast trigonometry are checked separately, by {@link SorMathAccuracy}.
+ * </p>
+ */
+public class Benchmarks {
+  public static void main(String[] args) {
+    boolean all = args.length == 0;
+    if (all || contains(args, "interpolation")) {
+      InterpolationBenchmarks.run();
+    }
+    if (all || contains(args, "sormath")) {
+      SorMathBenchmarks.run();
+    }
+    if (all || contains(args, "responsecurve")) {
+      ResponseCurveBenchmarks.run();
+    }
+    if (all || contains(args, "motors")) {
+      MotorManagerBenchmarks.run();
+    }
+  }
+
+  private static boolean contains(String[] args, String name) {
+    for (String arg : args) {
+      if (arg.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,138 @@
+package frc.sorutil.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import frc.sorutil.interpolate.GridInterpolator;
+import frc.sorutil.interpolate.InterpolationTable;
+import frc.sorutil.interpolate.Interpolator;
+
+/**
+ * Compares lookups on the TreeMap backed Interpolator against frozen InterpolationTables, with and without a Cursor, at
+ * a range of table sizes.
+ */
+class InterpolationBenchmarks {
+  private static final int[] SIZES = {8, 64, 512};
+  // Must be a power of two, inputs are selected by masking a counter.
+  private static final int INPUTS = 1024;
+  private static final int BATCH = 1000;
+
+  private final Interpolator map = new Interpolator();
+  private final InterpolationTable linear;
+  private final InterpolationTable cubic;
+  private final InterpolationTable.Cursor cursor;
+  private final GridInterpolator grid;
+
+  // Uniformly random inputs across the table.
+  private final double[] random = new double[INPUTS];
+  // Inputs that drift slowly across the table, like a distance measurement read every loop.
+  private final double[] walk = new double[INPUTS];
+  private final double[] sorted = new double[BATCH];
+  private final double[] unsorted = new double[BATCH];
+  private final double[] out = new double[BATCH];
+  private final double[] gridOut = new double[2];
+
+  private int index;
+
+  private InterpolationBenchmarks(int size) {
+    Random rand = new Random(size);
+    double x = 0;
+    for (int i = 0; i < size; i++) {
+      x += 0.5 + rand.nextDouble();
+      map.put(x, 1000 + 10 * x + rand.nextDouble());
+    }
+    linear = map.freeze();
+    cubic = map.freeze(InterpolationTable.Mode.MONOTONE_CUBIC);
+    cursor = linear.cursor();
+
+    double min = linear.minKey();
+    double max = linear.maxKey();
+    double step = (max - min) / INPUTS;
+    for (int i = 0; i < INPUTS; i++) {
+      random[i] = min + rand.nextDouble() * (max - min);
+      walk[i] = min + step * i;
+    }
+    for (int i = 0; i < BATCH; i++) {
+      unsorted[i] = min + rand.nextDouble() * (max - min);
+    }
+    System.arraycopy(unsorted, 0, sorted, 0, BATCH);
+    Arrays.sort(sorted);
+
+    int axis = (int) Math.max(2, Math.sqrt(size));
+    grid = new GridInterpolator(2, GridInterpolator.regularAxis(min, max, axis), GridInterpolator.regularAxis(-1, 1, axis));
+    for (double gx : GridInterpolator.regularAxis(min, max, axis)) {
+      for (double gy : GridInterpolator.regularAxis(-1, 1, axis)) {
+        grid.put(new double[] {gx, gy}, gx * 10, gy * 5);
+      }
+    }
+  }
+
+  static void run() {
+    for (int size : SIZES) {
+      var b = new InterpolationBenchmarks(size);
+      Bench.section("Interpolation, " + size + " points");
+      Bench.run("Interpolator.interpolate (TreeMap), random", b::treeMapRandom);
+      Bench.run("InterpolationTable.interpolate, random", b::tableRandom);
+      Bench.run("InterpolationTable.interpolate, slow walk", b::tableWalk);
+      Bench.run("InterpolationTable.Cursor.interpolate, slow walk", b::cursorWalk);
+      Bench.run("InterpolationTable (monotone cubic), random", b::cubicRandom);
+      Bench.run("Two chained Interpolators (TreeMap), random", b::chainedTreeMaps);
+      Bench.run("GridInterpolator 2D, 2 channels, random", b::gridRandom);
+      Bench.run("Interpolator.interpolate x" + BATCH + ", sorted", b::treeMapBatch);
+      Bench.run("InterpolationTable.evaluate x" + BATCH + ", sorted", b::tableBatchSorted);
+      Bench.run("InterpolationTable.evaluate x" + BATCH + ", unsorted", b::tableBatchUnsorted);
+    }
+  }
+
+  private double next(double[] inputs) {
+    index = (index + 1) & (INPUTS - 1);
+    return inputs[index];
+  }
+
+  private double treeMapRandom() {
+    return map.interpolate(next(random));
+  }
+
+  private double tableRandom() {
+    return linear.interpolate(next(random));
+  }
+
+  private double tableWalk() {
+    return linear.interpolate(next(walk));
+  }
+
+  private double cursorWalk() {
+    return cursor.interpolate(next(walk));
+  }
+
+  private double cubicRandom() {
+    return cubic.interpolate(next(random));
+  }
+
+  private double chainedTreeMaps() {
+    double x = next(random);
+    return map.interpolate(x) + map.interpolate(x);
+  }
+
+  private double gridRandom() {
+    grid.interpolate(next(random), 0.25, gridOut);
+    return gridOut[0] + gridOut[1];
+  }
+
+  private double treeMapBatch() {
+    double acc = 0;
+    for (int i = 0; i < BATCH; i++) {
+      acc += map.interpolate(sorted[i]);
+    }
+    return acc;
+  }
+
+  private double tableBatchSorted() {
+    linear.evaluate(sorted, out);
+    return out[BATCH - 1];
+  }
+
+  private double tableBatchUnsorted() {
+    linear.evaluate(unsorted, out);
+    return out[BATCH - 1];
+  }
+}
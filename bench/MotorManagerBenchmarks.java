@@ -0,0 +1,209 @@
+package frc.sorutil.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import edu.wpi.first.wpilibj.motorcontrol.MotorController;
+import frc.sorutil.motor.MotorConfiguration;
+import frc.sorutil.motor.MotorManager;
+import frc.sorutil.motor.PidProfile;
+import frc.sorutil.motor.SensorConfiguration;
+import frc.sorutil.motor.SimMotor;
+import frc.sorutil.motor.SuController;
+import frc.sorutil.motor.SuSimController;
+import frc.sorutil.motor.TelemetryRecorder;
+
+/**
+ * Measures MotorManager.periodic() over a full robot's worth of controllers. The controllers are backed by a no-op
+ * motor and a fake external sensor running soft PID, so the results show the cost of the library's own dispatch and
+ * control code without any CAN traffic. Also measures how much faster than real time a simulated mechanism runs.
+ */
+class MotorManagerBenchmarks {
+  private static final int[] COUNTS = {20, 40};
+  private static final long BLOCKING_TICK_NANOS = 20_000;
+  // Held so that the level isn't lost if the logger is garbage collected. Keeps the startup report out of the results.
+  private static final Logger managerLogger = Logger.getLogger("MotorManager");
+
+  static void run() {
+    Bench.section("MotorManager");
+    managerLogger.setLevel(Level.WARNING);
+    int created = 0;
+    for (int count : COUNTS) {
+      // MotorManager is a singleton that keeps every controller ever created, so each step only adds the difference.
+      for (; created < count; created++) {
+        var controller = new BenchController(created);
+        controller.set(SuController.ControlMode.POSITION, 90);
+      }
+      Bench.run("periodic(), " + count + " soft PID controllers", MotorManagerBenchmarks::periodic);
+      MotorManager.instance().setTimingEnabled(true);
+      Bench.run("periodic(), " + count + " soft PID controllers, timed", MotorManagerBenchmarks::periodic);
+      MotorManager.instance().setTimingEnabled(false);
+    }
+    recordTelemetry();
+
+    // Simulate blocking CAN calls by parking in each tick, split across two buses.
+    MotorManager.instance().removeAllMotors();
+    for (int i = 0; i < COUNTS[COUNTS.length - 1]; i++) {
+      var config = new MotorConfiguration();
+      config.setTickGroup(i % 2 == 0 ? "rio" : "canivore");
+      new BenchController(i, config, BLOCKING_TICK_NANOS).set(SuController.ControlMode.POSITION, 90);
+    }
+    Bench.run("periodic(), 40 blocking controllers, serial", MotorManagerBenchmarks::periodic);
+    MotorManager.instance().setParallelTicks(1);
+    Bench.run("periodic(), 40 blocking controllers, 2 groups parallel", MotorManagerBenchmarks::periodic);
+    MotorManager.instance().setParallelTicks(0);
+    MotorManager.instance().removeAllMotors();
+
+    var armConfig = new MotorConfiguration();
+    armConfig.setPidProfile(new PidProfile(0.02, 0, 0.001));
+    armConfig.setCurrentLimit(40.0);
+    var arm = new SuSimController("arm", SimMotor.NEO, 0.5, armConfig,
+        new SensorConfiguration(new SensorConfiguration.IntegratedSensorSource(100)));
+    arm.set(SuController.ControlMode.POSITION, 90);
+    Bench.run("SuSimController.step(), 20ms of position control", () -> {
+      arm.step(0.02);
+      return arm.simPosition();
+    });
+    MotorManager.instance().removeAllMotors();
+  }
+
+  /**
+   * Measures periodic() while recording telemetry for the controllers already registered. Segments rotate many times
+   * over a run, so the cost of rotation is included, but only two are kept to bound disk use.
+   */
+  private static void recordTelemetry() {
+    File dir;
+    try {
+      dir = Files.createTempDirectory("sorutil-telemetry").toFile();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try (var recorder = new TelemetryRecorder(dir, 16 << 20, 2)) {
+      MotorManager.instance().setTelemetryRecorder(recorder);
+      Bench.run("periodic(), " + MotorManager.instance().motorCount() + " soft PID controllers, recording telemetry",
+          MotorManagerBenchmarks::periodic);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      MotorManager.instance().setTelemetryRecorder(null);
+      File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          file.delete();
+        }
+      }
+      dir.delete();
+    }
+  }
+
+  private static double periodic() {
+    MotorManager.instance().periodic();
+    return 0;
+  }
+
+  private static class FakeSensor implements SensorConfiguration.ExternalSensor {
+    private double position;
+
+    @Override
+    public void setPosition(double position) {
+      this.position = position;
+    }
+
+    @Override
+    public double position() {
+      position += 0.01;
+      return position;
+    }
+
+    @Override
+    public double velocity() {
+      return 0.5;
+    }
+  }
+
+  private static class NullMotor implements MotorController {
+    private double output;
+    private boolean inverted;
+
+    @Override
+    public void set(double speed) {
+      output = speed;
+    }
+
+    @Override
+    public double get() {
+      return output;
+    }
+
+    @Override
+    public void setInverted(boolean isInverted) {
+      inverted = isInverted;
+    }
+
+    @Override
+    public boolean getInverted() {
+      return inverted;
+    }
+
+    @Override
+    public void disable() {
+      output = 0;
+    }
+
+    @Override
+    public void stopMotor() {
+      output = 0;
+    }
+  }
+
+  private static class BenchController extends SuController {
+    private final long blockNanos;
+
+    BenchController(int id) {
+      this(id, new MotorConfiguration(), 0);
+    }
+
+    BenchController(int id, MotorConfiguration config, long blockNanos) {
+      super(new NullMotor(), config,
+          new SensorConfiguration(new SensorConfiguration.ExternalSensorSource(new FakeSensor(), 1)),
+          Logger.getLogger("BenchController(" + id + ")"));
+      this.blockNanos = blockNanos;
+      startConfiguration();
+    }
+
+    @Override
+    protected void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
+      configureSoftPid();
+    }
+
+    @Override
+    public MotorController rawController() {
+      return internalController;
+    }
+
+    @Override
+    public void tick() {
+      if (blockNanos > 0) {
+        LockSupport.parkNanos(blockNanos);
+      }
+      tickSoftPid();
+    }
+
+    @Override
+    protected void setOutput(ControlMode mode, double setpoint) {
+      setSoftPid(mode == ControlMode.VELOCITY, setpoint);
+    }
+
+    @Override
+    protected void stopOutput() {
+      internalController.stopMotor();
+    }
+
+    @Override
+    protected void followOutput(SuController other) {}
+  }
+}
@@ -0,0 +1,84 @@
+package frc.sorutil.bench;
+
+import java.util.Random;
+import frc.sorutil.ResponseCurve;
+
+/**
+ * Compares analytic ResponseCurve evaluation against compiled curves, for single and multi-range curves.
+ */
+class ResponseCurveBenchmarks {
+  // Must be a power of two, inputs are selected by masking a counter.
+  private static final int INPUTS = 1024;
+
+  private final ResponseCurve simple;
+  private final ResponseCurve stitched;
+  private final ResponseCurve.Compiled compiled;
+  private final ResponseCurve.Function cubic = new ResponseCurve.Cubic(0.7, 0, 0.3, 0);
+
+  private final double[] inputs = new double[INPUTS];
+  private final double[] out = new double[INPUTS];
+
+  private int index;
+
+  private ResponseCurveBenchmarks() {
+    simple = new ResponseCurve(new ResponseCurve.Quadratic(1, 0, 0), ResponseCurve.NegativeMode.MIRROR);
+    stitched = new ResponseCurve.Builder(new ResponseCurve.Quadratic(0.5, 0.1, 0))
+        .then(0.4, new ResponseCurve.FractionalExponentPolynominal(1, 0, 0, 1.7))
+        .then(0.8, new ResponseCurve.Cubic(1, 0, 0, 0))
+        .mode(ResponseCurve.NegativeMode.MIRROR)
+        .cap()
+        .build();
+    compiled = stitched.compile(1024);
+
+    Random rand = new Random(0);
+    for (int i = 0; i < INPUTS; i++) {
+      inputs[i] = rand.nextDouble() * 2 - 1;
+    }
+  }
+
+  static void run() {
+    var b = new ResponseCurveBenchmarks();
+    Bench.section("ResponseCurve");
+    Bench.run("single quadratic, eval", b::simple);
+    Bench.run("three stitched ranges, eval", b::stitched);
+    Bench.run("three stitched ranges, compiled eval", b::compiled);
+    Bench.run("Cubic.eval x" + INPUTS + " (per call)", b::cubicPerCall);
+    Bench.run("Cubic.eval x" + INPUTS + " (batch)", b::cubicBatch);
+    Bench.run("compiled eval x" + INPUTS + " (batch)", b::compiledBatch);
+    System.out.println(String.format("compiled curve max error at 1024 intervals: %.3g", b.compiled.maxError(1 << 20)));
+  }
+
+  private double next() {
+    index = (index + 1) & (INPUTS - 1);
+    return inputs[index];
+  }
+
+  private double simple() {
+    return simple.eval(next());
+  }
+
+  private double stitched() {
+    return stitched.eval(next());
+  }
+
+  private double compiled() {
+    return compiled.eval(next());
+  }
+
+  private double cubicPerCall() {
+    for (int i = 0; i < INPUTS; i++) {
+      out[i] = cubic.eval(inputs[i]);
+    }
+    return out[INPUTS - 1];
+  }
+
+  private double cubicBatch() {
+    cubic.eval(inputs, out);
+    return out[INPUTS - 1];
+  }
+
+  private double compiledBatch() {
+    compiled.eval(inputs, out);
+    return out[INPUTS - 1];
+  }
+}
@@ -0,0 +1,170 @@
+package frc.sorutil.bench;
+
+import java.util.Random;
+import frc.sorutil.SorMath;
+
+/**
+ * SorMathAccuracy checks the fast trigonometry in SorMath against the error bounds documented on each function, and
+ * exits with a non-zero status if any is exceeded, so that it can be run as part of a build:
+ *
+ * <pre>
+ * java -cp build/libs/... frc.sorutil.bench.SorMathAccuracy
+ * </pre>
+ *
+ * <p>
+ * Inputs are sampled densely over a few turns, at and either side of every table entry, around multiples of 2 pi where
+ * the table wraps, at octant borders for atan2, at signed zeros, and randomly over a wide range of magnitudes.
+ * </p>
+ */
+public class SorMathAccuracy {
+  // As documented on SorMath.fastSin, fastCos and fastAtan2.
+  private static final double SIN_COS_BOUND = 3e-7;
+  private static final double ATAN2_BOUND = 2e-8;
+
+  private static final int TABLE_SIZE = 4096;
+  private static final int DENSE_SAMPLES = 2_000_000;
+  private static final int RANDOM_SAMPLES = 2_000_000;
+
+  private static boolean failed;
+
+  public static void main(String[] args) {
+    checkSinCos();
+    checkAtan2();
+    if (failed) {
+      System.out.println("FAILED");
+      System.exit(1);
+    }
+    System.out.println("OK");
+  }
+
+  private static void checkSinCos() {
+    Check sin = new Check("fastSin", SIN_COS_BOUND);
+    Check cos = new Check("fastCos", SIN_COS_BOUND);
+
+    double turn = 2 * Math.PI;
+    double[] special = {0.0, -0.0, Math.PI, -Math.PI, Math.PI / 2, -Math.PI / 2, turn, -turn};
+    for (double x : special) {
+      sinCos(sin, cos, x);
+    }
+
+    // Densely over four turns either side of zero.
+    for (int i = 0; i <= DENSE_SAMPLES; i++) {
+      sinCos(sin, cos, -4 * turn + 8 * turn * i / DENSE_SAMPLES);
+    }
+
+    // Every table entry, and either side of it, where interpolation switches intervals.
+    for (int i = -TABLE_SIZE; i <= 2 * TABLE_SIZE; i++) {
+      double x = i * turn / TABLE_SIZE;
+      sinCos(sin, cos, x);
+      sinCos(sin, cos, Math.nextUp(x));
+      sinCos(sin, cos, Math.nextDown(x));
+    }
+
+    // Around multiples of a turn, where the table index wraps.
+    for (int k = -1000; k <= 1000; k++) {
+      double x = k * turn;
+      for (double d = 1e-12; d < 1e-2; d *= 10) {
+        sinCos(sin, cos, x + d);
+        sinCos(sin, cos, x - d);
+      }
+    }
+
+    // Randomly over a wide range of magnitudes, up to 1e6 radians.
+    Random random = new Random(1);
+    for (int i = 0; i < RANDOM_SAMPLES; i++) {
+      double x = Math.pow(10, -6 + 12 * random.nextDouble()) * (random.nextBoolean() ? 1 : -1);
+      sinCos(sin, cos, x);
+    }
+
+    sin.report();
+    cos.report();
+  }
+
+  private static void sinCos(Check sin, Check cos, double x) {
+    sin.check(SorMath.fastSin(x), Math.sin(x), x, 0);
+    cos.check(SorMath.fastCos(x), Math.cos(x), x, 0);
+  }
+
+  private static void checkAtan2() {
+    Check atan2 = new Check("fastAtan2", ATAN2_BOUND);
+
+    // Signed zeros and the axes. The sign of zero is documented as ignored.
+    double[] zeros = {0.0, -0.0};
+    for (double y : zeros) {
+      for (double x : zeros) {
+        atan2(atan2, y, x);
+      }
+      atan2(atan2, y, 1);
+      atan2(atan2, y, -1);
+      atan2(atan2, 1, y);
+      atan2(atan2, -1, y);
+    }
+
+    // Octant borders, where |x| = |y|, and either side of them.
+    for (int sx = -1; sx <= 1; sx += 2) {
+      for (int sy = -1; sy <= 1; sy += 2) {
+        for (double m = 1e-300; m < 1e300; m *= 1e10) {
+          atan2(atan2, sy * m, sx * m);
+          atan2(atan2, sy * Math.nextUp(m), sx * m);
+          atan2(atan2, sy * m, sx * Math.nextUp(m));
+        }
+      }
+    }
+
+    // Densely around the circle.
+    for (int i = 0; i <= DENSE_SAMPLES; i++) {
+      double angle = -Math.PI + 2 * Math.PI * i / DENSE_SAMPLES;
+      atan2(atan2, Math.sin(angle), Math.cos(angle));
+    }
+
+    // Randomly, with components of very different magnitudes.
+    Random random = new Random(2);
+    for (int i = 0; i < RANDOM_SAMPLES; i++) {
+      double y = Math.pow(10, -10 + 20 * random.nextDouble()) * (random.nextBoolean() ? 1 : -1);
+      double x = Math.pow(10, -10 + 20 * random.nextDouble()) * (random.nextBoolean() ? 1 : -1);
+      atan2(atan2, y, x);
+    }
+
+    atan2.report();
+  }
+
+  private static void atan2(Check check, double y, double x) {
+    // Math.atan2 considers the sign of zero, fastAtan2 doesn't.
+    double expected = Math.atan2(y == 0 ? 0.0 : y, x == 0 ? 0.0 : x);
+    check.check(SorMath.fastAtan2(y, x), expected, y, x);
+  }
+
+  private static class Check {
+    private final String name;
+    private final double bound;
+    private long count;
+    private double maxError;
+    private double worstA;
+    private double worstB;
+
+    Check(String name, double bound) {
+      this.name = name;
+      this.bound = bound;
+    }
+
+    void check(double actual, double expected, double a, double b) {
+      count++;
+      double error = Math.abs(actual - expected);
+      // NaN fails too.
+      if (!(error <= maxError)) {
+        maxError = Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+        worstA = a;
+        worstB = b;
+      }
+    }
+
+    void report() {
+      boolean ok = maxError <= bound;
+      System.out.printf("%-10s %9d samples, max error %.3g at (%s, %s), bound %.3g: %s%n", name, count, maxError,
+          worstA, worstB, bound, ok ? "ok" : "EXCEEDED");
+      if (!ok) {
+        failed = true;
+      }
+    }
+  }
+}
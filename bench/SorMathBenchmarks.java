@@ -0,0 +1,133 @@
+package frc.sorutil.bench;
+
+import java.util.Random;
+import frc.sorutil.SorMath;
+
+/**
+ * Compares the allocating polar conversions against the buffer and batch variants, and java.lang.Math trig against the
+ * fast approximations.
+ */
+class SorMathBenchmarks {
+  // Must be a power of two, inputs are selected by masking a counter.
+  private static final int INPUTS = 1024;
+
+  private final double[] xs = new double[INPUTS];
+  private final double[] ys = new double[INPUTS];
+  private final double[] angles = new double[INPUTS];
+  private final double[] outA = new double[INPUTS];
+  private final double[] outB = new double[INPUTS];
+  private final double[] buffer = new double[2];
+
+  private int index;
+
+  private SorMathBenchmarks() {
+    Random rand = new Random(0);
+    for (int i = 0; i < INPUTS; i++) {
+      xs[i] = rand.nextGaussian();
+      ys[i] = rand.nextGaussian();
+      angles[i] = (rand.nextDouble() - 0.5) * 4 * Math.PI;
+    }
+  }
+
+  static void run() {
+    var b = new SorMathBenchmarks();
+    Bench.section("SorMath");
+    Bench.run("cartesianToPolar (allocating)", b::toPolarAllocating);
+    Bench.run("cartesianToPolar (buffer)", b::toPolarBuffer);
+    Bench.run("cartesianToPolarRadians (buffer)", b::toPolarRadians);
+    Bench.run("fastCartesianToPolarRadians (buffer)", b::toPolarFast);
+    Bench.run("polarToCartesian (allocating)", b::toCartesianAllocating);
+    Bench.run("polarToCartesian (buffer)", b::toCartesianBuffer);
+    Bench.run("polarToCartesianRadians (buffer)", b::toCartesianRadians);
+    Bench.run("fastPolarToCartesianRadians (buffer)", b::toCartesianFast);
+    Bench.run("cartesianToPolar x" + INPUTS + " (batch)", b::toPolarBatch);
+    Bench.run("Math.sin", b::sin);
+    Bench.run("SorMath.fastSin", b::fastSin);
+    Bench.run("Math.cos", b::cos);
+    Bench.run("SorMath.fastCos", b::fastCos);
+    Bench.run("Math.atan2", b::atan2);
+    Bench.run("SorMath.fastAtan2", b::fastAtan2);
+  }
+
+  private int next() {
+    index = (index + 1) & (INPUTS - 1);
+    return index;
+  }
+
+  private double toPolarAllocating() {
+    int i = next();
+    return SorMath.cartesianToPolar(xs[i], ys[i])[1];
+  }
+
+  private double toPolarBuffer() {
+    int i = next();
+    SorMath.cartesianToPolar(xs[i], ys[i], buffer);
+    return buffer[1];
+  }
+
+  private double toPolarRadians() {
+    int i = next();
+    SorMath.cartesianToPolarRadians(xs[i], ys[i], buffer);
+    return buffer[1];
+  }
+
+  private double toPolarFast() {
+    int i = next();
+    SorMath.fastCartesianToPolarRadians(xs[i], ys[i], buffer);
+    return buffer[1];
+  }
+
+  private double toCartesianAllocating() {
+    int i = next();
+    return SorMath.polarToCartesian(xs[i], angles[i])[1];
+  }
+
+  private double toCartesianBuffer() {
+    int i = next();
+    SorMath.polarToCartesian(xs[i], angles[i], buffer);
+    return buffer[1];
+  }
+
+  private double toCartesianRadians() {
+    int i = next();
+    SorMath.polarToCartesianRadians(xs[i], angles[i], buffer);
+    return buffer[1];
+  }
+
+  private double toCartesianFast() {
+    int i = next();
+    SorMath.fastPolarToCartesianRadians(xs[i], angles[i], buffer);
+    return buffer[1];
+  }
+
+  private double toPolarBatch() {
+    SorMath.cartesianToPolar(xs, ys, outA, outB);
+    return outB[INPUTS - 1];
+  }
+
+  private double sin() {
+    return Math.sin(angles[next()]);
+  }
+
+  private double fastSin() {
+    return SorMath.fastSin(angles[next()]);
+  }
+
+  private double cos() {
+    return Math.cos(angles[next()]);
+  }
+
+  private double fastCos() {
+    return SorMath.fastCos(angles[next()]);
+  }
+
+  private double atan2() {
+    int i = next();
+    return Math.atan2(ys[i], xs[i]);
+  }
+
+  private double fastAtan2() {
+    int i = next();
+    return SorMath.fastAtan2(ys[i], xs[i]);
+  }
+}
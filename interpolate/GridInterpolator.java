@@ -0,0 +1,265 @@
+package frc.sorutil.interpolate;
+
+import java.util.Arrays;
+
+/**
+ * GridInterpolator is the multi-dimensional counterpart of Interpolator. Points are placed on a grid (regular or
+ * rectilinear, i.e. each axis may have uneven spacing), and every point holds one or more output channels. Lookups
+ * linearly interpolate along every axis (bilinear in two dimensions, trilinear in three, and so on) and return all of
+ * the channels at once.
+ *
+ * <p>
+ * For example, a shooter that depends on both distance and robot velocity and produces both an RPM and a hood angle
+ * could be described as:
+ * </p>
+ *
+ * <pre>
+ * var distances = new double[] {1, 2, 3, 4};
+ * var velocities = GridInterpolator.regularAxis(-2, 2, 5);
+ * var shooter = new GridInterpolator(2, distances, velocities);
+ * shooter.put(new double[] {1, -2}, 1500, 20); // rpm, hood angle
+ * // ... one put for every point on the grid
+ *
+ * double[] out = new double[2];
+ * if (shooter.interpolate(distance, velocity, out)) {
+ *   double rpm = out[0];
+ *   double hood = out[1];
+ * }
+ * </pre>
+ *
+ * <p>
+ * All of the data is held in a single flat array, lookups perform one binary search per axis, and results are written
+ * into a caller supplied array, so lookups don't allocate. Inputs outside of the grid on any axis, where Interpolator
+ * would return null, cause interpolate to return false and fill the output with NaN. Grid points that were never put
+ * are NaN as well, and will produce NaN for any lookup that depends on them.
+ * </p>
+ *
+ * <p>
+ * Lookups use internal scratch space, so a GridInterpolator should not be shared between threads.
+ * </p>
+ */
+public class GridInterpolator {
+  private final double[][] axes;
+  private final int channels;
+  private final int[] strides;
+  private final double[] data;
+
+  // Scratch space for lookups, holding the lower grid index and fraction along each axis.
+  private final int[] lower;
+  private final double[] fractions;
+
+  /**
+   * Create a new grid with the given number of output channels. Each axis array lists the coordinates of the grid
+   * points along that axis, and must be strictly increasing.
+   *
+   * @param channels the number of outputs held at each grid point
+   * @param axes coordinates of the grid along each dimension
+   */
+  public GridInterpolator(int channels, double[]... axes) {
+    if (channels < 1) {
+      throw new IllegalArgumentException("GridInterpolator requires at least one output channel");
+    }
+    if (axes.length < 1) {
+      throw new IllegalArgumentException("GridInterpolator requires at least one axis");
+    }
+
+    this.channels = channels;
+    this.axes = new double[axes.length][];
+    this.strides = new int[axes.length];
+
+    int points = 1;
+    for (int k = axes.length - 1; k >= 0; k--) {
+      double[] axis = axes[k];
+      if (axis.length < 1) {
+        throw new IllegalArgumentException("axis " + k + " has no points");
+      }
+      for (int i = 1; i < axis.length; i++) {
+        if (!(axis[i] > axis[i - 1])) {
+          throw new IllegalArgumentException("axis " + k + " must be strictly increasing");
+        }
+      }
+      this.axes[k] = axis.clone();
+      strides[k] = points;
+      points *= axis.length;
+    }
+
+    data = new double[points * channels];
+    Arrays.fill(data, Double.NaN);
+
+    lower = new int[axes.length];
+    fractions = new double[axes.length];
+  }
+
+  /**
+   * Create the coordinates for a regularly spaced axis, from min to max inclusive.
+   *
+   * @param min the first coordinate
+   * @param max the last coordinate
+   * @param count the number of points on the axis, at least 2
+   */
+  public static double[] regularAxis(double min, double max, int count) {
+    if (count < 2) {
+      throw new IllegalArgumentException("a regular axis requires at least two points");
+    }
+    double[] axis = new double[count];
+    for (int i = 0; i < count; i++) {
+      axis[i] = min + (max - min) * i / (count - 1);
+    }
+    axis[count - 1] = max;
+    return axis;
+  }
+
+  public int dimensions() {
+    return axes.length;
+  }
+
+  public int channels() {
+    return channels;
+  }
+
+  /**
+   * Set the outputs at a grid point. The point must lie exactly on the grid, i.e. each coordinate must be one of the
+   * values of its axis.
+   *
+   * @param point the coordinates of the grid point, one per axis
+   * @param outputs the value of each channel at that point
+   */
+  public void put(double[] point, double... outputs) {
+    if (point.length != axes.length) {
+      throw new IllegalArgumentException("expected " + axes.length + " coordinates, got " + point.length);
+    }
+    if (outputs.length != channels) {
+      throw new IllegalArgumentException("expected " + channels + " outputs, got " + outputs.length);
+    }
+
+    int index = 0;
+    for (int k = 0; k < axes.length; k++) {
+      int i = Arrays.binarySearch(axes[k], point[k]);
+      if (i < 0) {
+        throw new IllegalArgumentException("coordinate " + point[k] + " is not on axis " + k);
+      }
+      index += i * strides[k];
+    }
+    System.arraycopy(outputs, 0, data, index * channels, channels);
+  }
+
+  /**
+   * Interpolate all channels at the given point.
+   *
+   * @param input the coordinates to look up, one per axis
+   * @param out receives one value per channel
+   * @return true if the point lies within the grid, false (with out filled with NaN) if it does not.
+   */
+  public boolean interpolate(double[] input, double[] out) {
+    if (input.length != axes.length) {
+      throw new IllegalArgumentException("expected " + axes.length + " coordinates, got " + input.length);
+    }
+    for (int k = 0; k < axes.length; k++) {
+      if (!locate(k, input[k])) {
+        Arrays.fill(out, 0, channels, Double.NaN);
+        return false;
+      }
+    }
+    blend(out);
+    return true;
+  }
+
+  /**
+   * Two dimensional variant of {@link #interpolate(double[], double[])}, which avoids building an input array.
+   */
+  public boolean interpolate(double x, double y, double[] out) {
+    if (axes.length != 2) {
+      throw new IllegalStateException("grid has " + axes.length + " dimensions, not 2");
+    }
+    if (!locate(0, x) || !locate(1, y)) {
+      Arrays.fill(out, 0, channels, Double.NaN);
+      return false;
+    }
+    blend(out);
+    return true;
+  }
+
+  /**
+   * Three dimensional variant of {@link #interpolate(double[], double[])}, which avoids building an input array.
+   */
+  public boolean interpolate(double x, double y, double z, double[] out) {
+    if (axes.length != 3) {
+      throw new IllegalStateException("grid has " + axes.length + " dimensions, not 3");
+    }
+    if (!locate(0, x) || !locate(1, y) || !locate(2, z)) {
+      Arrays.fill(out, 0, channels, Double.NaN);
+      return false;
+    }
+    blend(out);
+    return true;
+  }
+
+  /**
+   * Finds the cell along axis k that contains the input, storing its lower index and the fractional position within
+   * it. Returns false if the input is outside of the axis.
+   */
+  private boolean locate(int k, double input) {
+    double[] axis = axes[k];
+    int last = axis.length - 1;
+    if (!(input >= axis[0] && input <= axis[last])) {
+      return false;
+    }
+
+    // Single point axes, and inputs that land exactly on the last point, don't have a cell above them, so they use
+    // the cell below with a fraction of 1 instead.
+    if (last == 0) {
+      lower[k] = 0;
+      fractions[k] = 0;
+      return true;
+    }
+
+    int base = 0;
+    int n = axis.length;
+    while (n > 1) {
+      int half = n >>> 1;
+      base = (axis[base + half] <= input) ? base + half : base;
+      n -= half;
+    }
+    if (base == last) {
+      base--;
+    }
+
+    lower[k] = base;
+    fractions[k] = (input - axis[base]) / (axis[base + 1] - axis[base]);
+    return true;
+  }
+
+  /**
+   * Combines the 2^d corners of the located cell, weighting each by its distance from the input.
+   */
+  private void blend(double[] out) {
+    int d = axes.length;
+    int base = 0;
+    for (int k = 0; k < d; k++) {
+      base += lower[k] * strides[k];
+    }
+
+    Arrays.fill(out, 0, channels, 0);
+    for (int corner = 0; corner < (1 << d); corner++) {
+      double weight = 1;
+      int index = base;
+      for (int k = 0; k < d; k++) {
+        if ((corner & (1 << k)) != 0) {
+          weight *= fractions[k];
+          index += strides[k];
+        } else {
+          weight *= 1 - fractions[k];
+        }
+      }
+
+      // Corners that don't contribute are skipped, which also keeps single point axes from reading past the grid.
+      if (weight == 0) {
+        continue;
+      }
+      int offset = index * channels;
+      for (int c = 0; c < channels; c++) {
+        out[c] += weight * data[offset + c];
+      }
+    }
+  }
+}
@@ -0,0 +1,405 @@
+package frc.sorutil.interpolate;
+
+import java.util.Map;
+
+/**
+ * InterpolationTable is a frozen, immutable snapshot of an Interpolator. Keys and values are held in sorted primitive
+ * arrays, so a lookup is a binary search over a {@code double[]} and a single linear interpolation, with no boxing and
+ * no allocation.
+ *
+ * <p>
+ * Tables are created by building an Interpolator as usual and then calling {@link Interpolator#freeze()}:
+ * </p>
+ *
+ * <pre>
+ * var rpm = new Interpolator();
+ * rpm.put(100, 1000);
+ * rpm.put(200, 2000);
+ * rpm.put(300, 4000);
+ * InterpolationTable table = rpm.freeze();
+ *
+ * // ...
+ *
+ * double output = table.interpolate(distance);
+ * if (Double.isNaN(output)) {
+ *   // out of range, same as a null result from Interpolator.
+ * }
+ * </pre>
+ *
+ * <p>
+ * Because primitives can't be null, inputs that Interpolator would return null for (anything outside of the lowest and
+ * highest keys) produce {@link Double#NaN} instead.
+ * </p>
+ *
+ * <p>
+ * Tables may also be frozen with one of the smooth {@link Mode}s, which fit a cubic polynomial to each segment instead
+ * of a straight line. The coefficients for each segment are computed once when the table is frozen, so a lookup in any
+ * mode costs the same: a search and a single polynomial evaluation.
+ * </p>
+ */
+public final class InterpolationTable {
+  /**
+   * Mode selects the curve that is fit between the points in the table. All modes pass exactly through every point.
+   */
+  public static enum Mode {
+    /**
+     * Straight lines between points, identical to Interpolator.
+     */
+    LINEAR,
+    /**
+     * Piecewise cubic Hermite curve with slopes chosen so that the curve never overshoots the data (Fritsch-Carlson,
+     * a.k.a. PCHIP). Monotonic data produces a monotonic curve, which is usually what's wanted for something like
+     * distance to RPM.
+     */
+    MONOTONE_CUBIC,
+    /**
+     * Akima spline, where slopes are chosen locally from the neighbouring four segments. Avoids the wiggle that a
+     * natural spline shows around outliers, but may overshoot slightly.
+     */
+    AKIMA,
+    /**
+     * Natural cubic spline, continuous in the first and second derivative with zero curvature at the ends. The
+     * smoothest option, but a single bad point affects the whole curve and the curve can overshoot between points.
+     */
+    NATURAL_CUBIC,
+  }
+
+  private final Mode mode;
+  private final double[] keys;
+  private final double[] values;
+
+  /**
+   * Polynomial coefficients for each segment, four per segment, highest order first. Segment i is evaluated at
+   * t = input - keys[i].
+   */
+  private final double[] coefficients;
+
+  InterpolationTable(Map<Double, Double> points, Mode mode) {
+    int n = points.size();
+    if (n == 0) {
+      throw new IllegalArgumentException("InterpolationTable requires at least one point");
+    }
+
+    keys = new double[n];
+    values = new double[n];
+
+    // The source map is a TreeMap, so iteration order is already sorted by key.
+    int i = 0;
+    for (var entry : points.entrySet()) {
+      keys[i] = entry.getKey();
+      values[i] = entry.getValue();
+      i++;
+    }
+
+    this.mode = mode;
+
+    // Tables with fewer than three points don't have enough information to fit a curve to, so they fall back to
+    // straight lines regardless of the requested mode.
+    double[] slopes;
+    if (n < 3 || mode == Mode.LINEAR) {
+      coefficients = linearCoefficients(keys, values);
+      return;
+    }
+    switch (mode) {
+      case MONOTONE_CUBIC:
+        slopes = monotoneSlopes(keys, values);
+        break;
+      case AKIMA:
+        slopes = akimaSlopes(keys, values);
+        break;
+      case NATURAL_CUBIC:
+        coefficients = naturalCubicCoefficients(keys, values);
+        return;
+      default:
+        throw new IllegalArgumentException("unknown interpolation mode: " + mode);
+    }
+    coefficients = hermiteCoefficients(keys, values, slopes);
+  }
+
+  /**
+   * Interpolate between known values, producing a new value using a linear relationship between the nearest points.
+   *
+   * @param input a value to use as the input to the mapping
+   * @return an interpolated value, or NaN if the input is outside of the table.
+   */
+  public double interpolate(double input) {
+    if (!(input >= keys[0] && input <= keys[keys.length - 1])) {
+      return Double.NaN;
+    }
+
+    return evaluate(segment(input), input);
+  }
+
+  /**
+   * Interpolate every value of in, writing the results into the same positions of out. Out of range inputs produce NaN,
+   * as with {@link #interpolate(double)}.
+   *
+   * <p>
+   * The segment found for each input is used as the starting point for the next one, so sorted (or mostly sorted)
+   * input, such as a sweep or a trajectory, resolves nearly every point without a binary search. Unsorted input is
+   * handled correctly, but gains less.
+   * </p>
+   *
+   * @param in the inputs to look up
+   * @param out receives the results, must be at least as long as in
+   */
+  public void evaluate(double[] in, double[] out) {
+    if (out.length < in.length) {
+      throw new IllegalArgumentException("output array is shorter than input array");
+    }
+
+    double min = keys[0];
+    double max = keys[keys.length - 1];
+    int hint = 0;
+    for (int j = 0; j < in.length; j++) {
+      double input = in[j];
+      if (!(input >= min && input <= max)) {
+        out[j] = Double.NaN;
+        continue;
+      }
+      hint = locate(hint, input);
+      out[j] = evaluate(hint, input);
+    }
+  }
+
+  /**
+   * Create a new Cursor over this table. Each caller that performs repeated lookups should hold its own Cursor.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * The interpolation mode that this table was frozen with.
+   */
+  public Mode mode() {
+    return mode;
+  }
+
+  /**
+   * Whether the input lies within the table, i.e. whether interpolate will return a number rather than NaN.
+   */
+  public boolean inRange(double input) {
+    return input >= keys[0] && input <= keys[keys.length - 1];
+  }
+
+  /**
+   * The number of points in the table.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  public double minKey() {
+    return keys[0];
+  }
+
+  public double maxKey() {
+    return keys[keys.length - 1];
+  }
+
+  /**
+   * Evaluates segment i, which starts at keys[i], at the given input.
+   */
+  double evaluate(int i, double input) {
+    if (i == keys.length - 1) {
+      return values[i];
+    }
+
+    double t = input - keys[i];
+    int c = i << 2;
+    return ((coefficients[c] * t + coefficients[c + 1]) * t + coefficients[c + 2]) * t + coefficients[c + 3];
+  }
+
+  /**
+   * Finds the index of the greatest key that is less than or equal to the input, which must already be known to be
+   * within the table. The loop always runs log2(n) times and the only branch is the select on the comparison, which the
+   * JIT can turn into a conditional move.
+   */
+  int segment(double input) {
+    int base = 0;
+    int n = keys.length;
+    while (n > 1) {
+      int half = n >>> 1;
+      base = (keys[base + half] <= input) ? base + half : base;
+      n -= half;
+    }
+    return base;
+  }
+
+  private static double[] linearCoefficients(double[] x, double[] y) {
+    double[] coeff = new double[(x.length - 1) * 4];
+    for (int i = 0; i < x.length - 1; i++) {
+      coeff[i * 4 + 2] = (y[i + 1] - y[i]) / (x[i + 1] - x[i]);
+      coeff[i * 4 + 3] = y[i];
+    }
+    return coeff;
+  }
+
+  /**
+   * Converts a slope at each point into the coefficients of the cubic Hermite curve that passes through each pair of
+   * points with those slopes.
+   */
+  private static double[] hermiteCoefficients(double[] x, double[] y, double[] slopes) {
+    double[] coeff = new double[(x.length - 1) * 4];
+    for (int i = 0; i < x.length - 1; i++) {
+      double h = x[i + 1] - x[i];
+      double delta = (y[i + 1] - y[i]) / h;
+      double m0 = slopes[i];
+      double m1 = slopes[i + 1];
+
+      coeff[i * 4] = (m0 + m1 - 2 * delta) / (h * h);
+      coeff[i * 4 + 1] = (3 * delta - 2 * m0 - m1) / h;
+      coeff[i * 4 + 2] = m0;
+      coeff[i * 4 + 3] = y[i];
+    }
+    return coeff;
+  }
+
+  private static double[] secants(double[] x, double[] y) {
+    double[] delta = new double[x.length - 1];
+    for (int i = 0; i < delta.length; i++) {
+      delta[i] = (y[i + 1] - y[i]) / (x[i + 1] - x[i]);
+    }
+    return delta;
+  }
+
+  private static double[] monotoneSlopes(double[] x, double[] y) {
+    int n = x.length;
+    double[] delta = secants(x, y);
+    double[] m = new double[n];
+
+    m[0] = delta[0];
+    m[n - 1] = delta[n - 2];
+    for (int i = 1; i < n - 1; i++) {
+      // A change in direction (or a flat segment) must have a zero slope, or the curve would overshoot the point.
+      if (delta[i - 1] * delta[i] <= 0) {
+        m[i] = 0;
+        continue;
+      }
+      // Weighted harmonic mean of the neighbouring secants, which keeps the curve monotonic on uneven spacing.
+      double h0 = x[i] - x[i - 1];
+      double h1 = x[i + 1] - x[i];
+      double w0 = 2 * h1 + h0;
+      double w1 = h1 + 2 * h0;
+      m[i] = (w0 + w1) / (w0 / delta[i - 1] + w1 / delta[i]);
+    }
+    return m;
+  }
+
+  private static double[] akimaSlopes(double[] x, double[] y) {
+    int n = x.length;
+    double[] secants = secants(x, y);
+
+    // Akima needs two secants past each end, which are extrapolated linearly. delta[k + 2] holds secant k.
+    double[] delta = new double[n + 3];
+    System.arraycopy(secants, 0, delta, 2, n - 1);
+    delta[1] = 2 * delta[2] - delta[3];
+    delta[0] = 2 * delta[1] - delta[2];
+    delta[n + 1] = 2 * delta[n] - delta[n - 1];
+    delta[n + 2] = 2 * delta[n + 1] - delta[n];
+
+    double[] m = new double[n];
+    for (int i = 0; i < n; i++) {
+      double w0 = Math.abs(delta[i + 3] - delta[i + 2]);
+      double w1 = Math.abs(delta[i + 1] - delta[i]);
+      if (w0 + w1 == 0) {
+        m[i] = (delta[i + 1] + delta[i + 2]) / 2;
+      } else {
+        m[i] = (w0 * delta[i + 1] + w1 * delta[i + 2]) / (w0 + w1);
+      }
+    }
+    return m;
+  }
+
+  private static double[] naturalCubicCoefficients(double[] x, double[] y) {
+    int n = x.length;
+    double[] delta = secants(x, y);
+
+    // Solve the tridiagonal system for the second derivative at each interior point with the Thomas algorithm. The
+    // second derivative at both ends is zero.
+    double[] curvature = new double[n];
+    double[] upper = new double[n];
+    double[] rhs = new double[n];
+    for (int i = 1; i < n - 1; i++) {
+      double h0 = x[i] - x[i - 1];
+      double h1 = x[i + 1] - x[i];
+      double diag = 2 * (h0 + h1) - h0 * upper[i - 1];
+      upper[i] = h1 / diag;
+      rhs[i] = (6 * (delta[i] - delta[i - 1]) - h0 * rhs[i - 1]) / diag;
+    }
+    for (int i = n - 2; i > 0; i--) {
+      curvature[i] = rhs[i] - upper[i] * curvature[i + 1];
+    }
+
+    double[] coeff = new double[(n - 1) * 4];
+    for (int i = 0; i < n - 1; i++) {
+      double h = x[i + 1] - x[i];
+      coeff[i * 4] = (curvature[i + 1] - curvature[i]) / (6 * h);
+      coeff[i * 4 + 1] = curvature[i] / 2;
+      coeff[i * 4 + 2] = delta[i] - h * (2 * curvature[i] + curvature[i + 1]) / 6;
+      coeff[i * 4 + 3] = y[i];
+    }
+    return coeff;
+  }
+
+  /**
+   * Finds the segment containing the input, starting with the hinted segment and its neighbours before falling back to
+   * a full search. The input must already be known to be within the table.
+   */
+  int locate(int hint, double input) {
+    int n = keys.length;
+    if (keys[hint] <= input) {
+      if (hint + 1 == n || input < keys[hint + 1]) {
+        return hint;
+      }
+      if (hint + 2 == n || input < keys[hint + 2]) {
+        return hint + 1;
+      }
+    } else if (hint > 0 && keys[hint - 1] <= input) {
+      return hint - 1;
+    }
+    return segment(input);
+  }
+
+  /**
+   * Cursor performs lookups on an InterpolationTable while remembering the segment that bracketed the previous input.
+   * When inputs change slowly between calls, as with a distance measurement read every loop, the next input almost
+   * always falls into the same segment or one of its neighbours, and the lookup completes without a binary search.
+   * Inputs that jump further away fall back to the normal search.
+   *
+   * <p>
+   * A Cursor holds mutable state and is not thread safe, so it should not be shared between threads. The table itself
+   * may be shared freely.
+   * </p>
+   */
+  public final class Cursor {
+    private int last;
+
+    private Cursor() {}
+
+    /**
+     * Identical to {@link InterpolationTable#interpolate(double)}, but checks the previously used segment and its
+     * neighbours first.
+     *
+     * @param input a value to use as the input to the mapping
+     * @return an interpolated value, or NaN if the input is outside of the table.
+     */
+    public double interpolate(double input) {
+      if (!(input >= keys[0] && input <= keys[keys.length - 1])) {
+        return Double.NaN;
+      }
+
+      int i = locate(last, input);
+      last = i;
+      return evaluate(i, input);
+    }
+
+    /**
+     * The index of the segment used by the most recent lookup.
+     */
+    public int lastSegment() {
+      return last;
+    }
+  }
+}
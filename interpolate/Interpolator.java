@@ -1,5 +1,6 @@
 package frc.sorutil.interpolate;
 
+import java.util.Arrays;
 import java.util.TreeMap;
 import frc.sorutil.SorMath;
 
@@ -47,7 +48,49 @@ public class Interpolator extends TreeMap<Double, Double> {
     return SorMath.linearInterpolate(input, floor.getKey(), ceiling.getKey(), floor.getValue(), ceiling.getValue());
   }
 
+  /**
+   * Interpolate every value of in, writing the results into the same positions of out. Because a primitive array can't
+   * hold null, inputs for which interpolate would return null produce NaN.
+   * 
+   * <p>
+   * This freezes a temporary InterpolationTable for the call, so repeated batches should freeze a table once and use
+   * {@link InterpolationTable#evaluate(double[], double[])} directly.
+   * </p>
+   * 
+   * @param in the inputs to look up
+   * @param out receives the results, must be at least as long as in
+   */
+  public void evaluate(double[] in, double[] out) {
+    if (isEmpty()) {
+      Arrays.fill(out, 0, in.length, Double.NaN);
+      return;
+    }
+    freeze().evaluate(in, out);
+  }
+
   public Double put(int a0, int a1) {
     return this.put((double) a0, (double) a1);
   }
+
+  /**
+   * Freeze the current points into an immutable, array-backed InterpolationTable. Lookups on the table don't box or
+   * allocate, so it should be preferred in periodic code. Later changes to this Interpolator are not reflected in a
+   * table that has already been frozen.
+   * 
+   * @return a new InterpolationTable containing the current points.
+   */
+  public InterpolationTable freeze() {
+    return freeze(InterpolationTable.Mode.LINEAR);
+  }
+
+  /**
+   * Freeze the current points into an immutable InterpolationTable that uses the given mode to interpolate between
+   * points. See {@link InterpolationTable.Mode} for the available curves.
+   * 
+   * @param mode the kind of curve to fit between points
+   * @return a new InterpolationTable containing the current points.
+   */
+  public InterpolationTable freeze(InterpolationTable.Mode mode) {
+    return new InterpolationTable(this, mode);
+  }
 }
@@ -0,0 +1,73 @@
+package frc.sorutil.motor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * ConfigurationStore remembers, across restarts of the robot program, the configuration last written successfully to
+ * each motor controller, so that unchanged settings don't have to be written again on every boot. Entries are keyed by
+ * the controller's logger name, which includes its type and CAN ID.
+ *
+ * <p>
+ * Safe to use from multiple configuration threads. Changes are only written to disk by save().
+ * </p>
+ */
+class ConfigurationStore {
+  private static final Logger logger = Logger.getLogger("ConfigurationStore");
+
+  private final File file;
+  private final Properties entries = new Properties();
+  private boolean dirty;
+
+  ConfigurationStore(File file) {
+    this.file = file;
+    if (!file.isFile()) {
+      return;
+    }
+    try (InputStream in = new FileInputStream(file)) {
+      entries.load(in);
+    } catch (IOException e) {
+      logger.warning("failed to read stored motor configuration, every controller will be fully configured: " + e);
+      entries.clear();
+    }
+  }
+
+  synchronized boolean matches(String key, String fingerprint) {
+    return fingerprint.equals(entries.getProperty(key));
+  }
+
+  synchronized void put(String key, String fingerprint) {
+    if (!fingerprint.equals(entries.setProperty(key, fingerprint))) {
+      dirty = true;
+    }
+  }
+
+  synchronized void remove(String key) {
+    if (entries.remove(key) != null) {
+      dirty = true;
+    }
+  }
+
+  synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+    File dir = file.getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      logger.warning("failed to create directory for stored motor configuration: " + dir);
+      return;
+    }
+    try (OutputStream out = new FileOutputStream(file)) {
+      entries.store(out, "Motor controller configuration last written by SORUtil, delete to force a full configuration");
+      dirty = false;
+    } catch (IOException e) {
+      logger.warning("failed to save stored motor configuration: " + e);
+    }
+  }
+}
@@ -39,6 +39,57 @@ public class MotorConfiguration {
 
     private double maxOutput = 1;
 
+    /**
+     * tickGroup names the group this motor is ticked with when the MotorManager
+     * runs ticks in parallel, typically the name of the CAN bus the controller is
+     * on. Motors in the same group are always ticked in order on the same thread,
+     * so motors that share state (e.g. a sensor, or a leader and its followers)
+     * should be in the same group. If left null (default), the motor is in the
+     * default group.
+     */
+    private String tickGroup = null;
+
+    /**
+     * softPidPeriod specifies the period in seconds of a dedicated high rate
+     * loop that runs the soft PID controller, used only with an
+     * ExternalSensorSource. If left null (default), soft PID runs in tick(), at
+     * the rate of the command scheduler.
+     */
+    private Double softPidPeriod = null;
+
+    /**
+     * setpointTolerances holds, for each ControlMode (indexed by ordinal), the
+     * amount a setpoint must change by before it is sent to the motor
+     * controller again. Setpoints within the tolerance of the last one sent are
+     * dropped, to save CAN bandwidth. Defaults to 0, i.e. only identical
+     * setpoints are dropped.
+     */
+    private final double[] setpointTolerances = new double[SuController.ControlMode.values().length];
+
+    /**
+     * maxWriteRate limits how many times per second a new setpoint in the same
+     * control mode is sent to the motor controller. Setpoints that arrive too
+     * soon are held back and sent once the rate allows, so the latest setpoint
+     * always gets through. Changing control mode is never rate limited. If left
+     * null (default), there is no limit.
+     */
+    private Double maxWriteRate = null;
+
+    /**
+     * keepAlivePeriod is the longest time in seconds that a setpoint dropped
+     * as a duplicate may go without being re-sent to the motor controller, so
+     * that a lost frame or a controller reset can't leave it with a stale
+     * output. If left null (default), duplicates are never re-sent.
+     */
+    private Double keepAlivePeriod = null;
+
+    /**
+     * statusFrameProfile sets how often the motor controller sends each of its
+     * status frames. Defaults to StatusFrameProfile.DEFAULT, which leaves every
+     * frame at the vendor default.
+     */
+    private StatusFrameProfile statusFrameProfile = StatusFrameProfile.DEFAULT;
+
     // ---- End configuration options ----
 
     public MotorConfiguration() {}
@@ -71,6 +122,33 @@ public class MotorConfiguration {
       this.maxOutput = output;
     }
 
+    public void setTickGroup(String group) {
+      this.tickGroup = group;
+    }
+
+    public void setSoftPidPeriod(Double seconds) {
+      this.softPidPeriod = seconds;
+    }
+
+    public void setSetpointTolerance(SuController.ControlMode mode, double tolerance) {
+      if (!(tolerance >= 0)) {
+        throw new IllegalArgumentException("setpoint tolerance must not be negative, got: " + tolerance);
+      }
+      setpointTolerances[mode.ordinal()] = tolerance;
+    }
+
+    public void setMaxWriteRate(Double hertz) {
+      this.maxWriteRate = hertz;
+    }
+
+    public void setKeepAlivePeriod(Double seconds) {
+      this.keepAlivePeriod = seconds;
+    }
+
+    public void setStatusFrameProfile(StatusFrameProfile profile) {
+      this.statusFrameProfile = profile;
+    }
+
     public boolean voltageCompenstationEnabled() {
       return voltageCompenstation;
     }
@@ -98,4 +176,39 @@ public class MotorConfiguration {
     public double maxOutput() {
       return maxOutput;
     }
+
+    public String tickGroup() {
+      return tickGroup;
+    }
+
+    public Double softPidPeriod() {
+      return softPidPeriod;
+    }
+
+    public double setpointTolerance(SuController.ControlMode mode) {
+      return setpointTolerances[mode.ordinal()];
+    }
+
+    public Double maxWriteRate() {
+      return maxWriteRate;
+    }
+
+    public Double keepAlivePeriod() {
+      return keepAlivePeriod;
+    }
+
+    public StatusFrameProfile statusFrameProfile() {
+      return statusFrameProfile;
+    }
+
+    /**
+     * Describes the options that are stored on the motor controller itself, so
+     * that the MotorManager can tell whether they've changed since they were
+     * last written. Options that only affect the library aren't included.
+     */
+    String fingerprint() {
+      return String.format("v1;vc=%b;pid=%s,%s,%s,%s;limit=%s;idle=%s;deadband=%s;inverted=%b;max=%s",
+          voltageCompenstation, pidProfile.p(), pidProfile.i(), pidProfile.d(), pidProfile.f(), currentLimit,
+          idleMode, neutralDeadband, inverted, maxOutput);
+    }
   }
@@ -1,15 +1,90 @@
 package frc.sorutil.motor;
 
-import java.util.HashSet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.sorutil.Errors;
+import frc.sorutil.TimingHistogram;
 
+/**
+ * MotorManager keeps track of every SuController and ticks each of them once per cycle.
+ * 
+ * <p>
+ * Controllers are held in an array in registration order and ticked in that order every cycle, so tick order is the
+ * same from run to run. Each controller is assigned an integer ID when it is registered, which never changes and is
+ * never reused, even once the controller is removed.
+ * </p>
+ * 
+ * <p>
+ * By default every controller is ticked on the scheduler thread, one after another. With
+ * {@link #setParallelTicks(int)}, controllers are instead split by their tick group (see
+ * {@link MotorConfiguration#setTickGroup(String)}) and the groups are ticked concurrently.
+ * </p>
+ * 
+ * <p>
+ * Controllers are configured as they're created, which involves many blocking calls per device. Startup can be sped up
+ * by configuring devices concurrently with {@link #setParallelConfiguration(int)}, and by skipping settings that are
+ * already stored on the device with {@link #setConfigurationCache(boolean)}. A report of how long each device took to
+ * configure is logged once all of them have finished, at the latest on the first cycle.
+ * </p>
+ * 
+ * <p>
+ * The state of every controller can be recorded each cycle for offline analysis, see
+ * {@link #setTelemetryRecorder(TelemetryRecorder)}.
+ * </p>
+ */
 public class MotorManager extends SubsystemBase{
   private static final MotorManager instance;
   static {
     instance = new MotorManager();
   }
 
-  private HashSet<SuController> motors = new HashSet<>();
+  private static final Logger logger = Logger.getLogger("MotorManager");
+
+  private static final double DEFAULT_CYCLE_BUDGET = 0.005;
+  private static final String CONFIGURATION_STORE = "sorutil/motor-configuration.properties";
+  private static final int INITIAL_CAPACITY = 32;
+
+  // Registered controllers in registration order, only the first motorCount entries are valid. Because IDs are handed
+  // out in increasing order and removal preserves order, the array is always sorted by ID.
+  private SuController[] motors = new SuController[INITIAL_CAPACITY];
+  private int motorCount;
+  private int nextId;
+
+  // Incremented at the start of every periodic(), used to expire cached sensor reads.
+  private long cycle;
+
+  // ---- Parallel ticking, see setParallelTicks ----
+  private ParallelTicker parallel;
+  private SuController[][] assignment;
+
+  // ---- Configuration, see setParallelConfiguration and setConfigurationCache ----
+  private ExecutorService configurationExecutor;
+  private ConfigurationStore configurationStore;
+  // False while any registered controller may not have finished configuring, or hasn't been reported yet.
+  private boolean configurationFinished = true;
+  private long configurationBatchStart;
+
+  // ---- Telemetry, see setTelemetryRecorder ----
+  private TelemetryRecorder telemetry;
+
+  // ---- Timing instrumentation, see setTimingEnabled ----
+  private boolean timingEnabled = false;
+  private final TimingHistogram cycleTiming = new TimingHistogram();
+  private long cycleBudgetNanos = (long) (DEFAULT_CYCLE_BUDGET * 1e9);
+  private long overruns;
+  private SuController slowestLastCycle;
 
   public static MotorManager instance() {
     return instance;
@@ -18,12 +93,475 @@ public class MotorManager extends SubsystemBase{
   // Because this is a subsystem, this method will be called periodically by the command scheduler.
   @Override
   public void periodic() {
-    for (SuController motor : motors) {
+    if (!configurationFinished) {
+      awaitConfiguration();
+    }
+
+    cycle++;
+    Errors.reportDue();
+    SuController[] motors = this.motors;
+    int count = motorCount;
+    for (int i = 0; i < count; i++) {
+      motors[i].flushPendingWrite();
+    }
+
+    if (parallel != null) {
+      parallelPeriodic();
+    } else if (!timingEnabled) {
+      for (int i = 0; i < count; i++) {
+        motors[i].tick();
+      }
+    } else {
+      timedPeriodic(motors, count);
+    }
+
+    if (telemetry != null) {
+      telemetry.record(cycle, motors, count);
+    }
+  }
+
+  private void timedPeriodic(SuController[] motors, int count) {
+    long cycleStart = System.nanoTime();
+    long last = cycleStart;
+    long slowest = -1;
+    for (int i = 0; i < count; i++) {
+      SuController motor = motors[i];
       motor.tick();
+
+      long now = System.nanoTime();
+      long elapsed = now - last;
+      motor.tickTiming.record(elapsed);
+      if (elapsed > slowest) {
+        slowest = elapsed;
+        slowestLastCycle = motor;
+      }
+      last = now;
+    }
+
+    long total = last - cycleStart;
+    cycleTiming.record(total);
+    if (total > cycleBudgetNanos) {
+      overruns++;
+    }
+  }
+
+  private void parallelPeriodic() {
+    if (assignment == null) {
+      assignment = partition(parallel.shares());
+    }
+    if (!timingEnabled) {
+      parallel.tick(assignment, false);
+      return;
+    }
+
+    long cycleStart = System.nanoTime();
+    parallel.tick(assignment, true);
+    long total = System.nanoTime() - cycleStart;
+
+    // Each share records its own controllers' timings, so the slowest controller is found afterwards.
+    long slowest = -1;
+    for (int i = 0; i < motorCount; i++) {
+      long elapsed = motors[i].tickTiming.last();
+      if (elapsed > slowest) {
+        slowest = elapsed;
+        slowestLastCycle = motors[i];
+      }
+    }
+
+    cycleTiming.record(total);
+    if (total > cycleBudgetNanos) {
+      overruns++;
+    }
+  }
+
+  /**
+   * Splits the registered controllers by tick group, keeping registration order within each group, and spreads the
+   * groups across the given number of shares, largest groups first, so that each share has a similar number of
+   * controllers.
+   */
+  private SuController[][] partition(int shares) {
+    Map<String, List<SuController>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < motorCount; i++) {
+      String group = Objects.toString(motors[i].motorConfig().tickGroup(), "");
+      groups.computeIfAbsent(group, g -> new ArrayList<>()).add(motors[i]);
+    }
+
+    List<List<SuController>> sorted = new ArrayList<>(groups.values());
+    sorted.sort((a, b) -> b.size() - a.size());
+
+    List<List<SuController>> shareLists = new ArrayList<>();
+    for (int i = 0; i < shares; i++) {
+      shareLists.add(new ArrayList<>());
+    }
+    for (List<SuController> group : sorted) {
+      List<SuController> smallest = shareLists.get(0);
+      for (List<SuController> share : shareLists) {
+        if (share.size() < smallest.size()) {
+          smallest = share;
+        }
+      }
+      smallest.addAll(group);
+    }
+
+    SuController[][] result = new SuController[shares][];
+    for (int i = 0; i < shares; i++) {
+      result[i] = shareLists.get(i).toArray(new SuController[0]);
+    }
+    return result;
+  }
+
+  /**
+   * The number of cycles run so far. Sensor reads through {@link SuController#outputPosition()} and
+   * {@link SuController#outputVelocity()} are cached for the rest of the cycle they were made in.
+   */
+  public long cycle() {
+    return cycle;
+  }
+
+  /**
+   * Configures controllers concurrently on the given number of threads, or on the thread that creates them if threads
+   * is 0 (the default). Only applies to controllers created afterwards, so this should be called before any are
+   * created, typically at the start of robotInit().
+   *
+   * <p>
+   * Each controller only talks to its own device while configuring, so devices are configured independently of each
+   * other. Calls on a controller that need it to be configured, such as set() and follow(), wait for its configuration
+   * to complete, as does the first periodic().
+   * </p>
+   *
+   * @param threads the number of configuration threads to use, or 0 to configure controllers as they're created
+   */
+  public void setParallelConfiguration(int threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("thread count must not be negative");
+    }
+    if (configurationExecutor != null) {
+      // Already submitted configurations still run to completion.
+      configurationExecutor.shutdown();
+      configurationExecutor = null;
+    }
+    if (threads == 0) {
+      return;
+    }
+    AtomicInteger count = new AtomicInteger();
+    configurationExecutor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "MotorManager configure " + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Enables or disables skipping settings that are already stored on the motor controller. When enabled, the
+   * configuration last written successfully to each controller is remembered in the operating directory (on the
+   * roboRIO, /home/lvuser/sorutil), and if a controller's configuration hasn't changed since, only the settings that
+   * don't survive a power cycle are applied. In particular, Spark MAX settings are only burned to flash when they change.
+   * Only applies to controllers created afterwards.
+   *
+   * <p>
+   * The stored configuration is per CAN ID, so it's checked against the controller before being trusted: CTRE
+   * controllers keep a hash of their configuration in a custom parameter, and a few settings are read back from a
+   * Spark MAX. A controller that has been replaced, or reset to factory defaults, is fully configured again. Deleting
+   * sorutil/motor-configuration.properties from the operating directory forces every controller to be fully configured.
+   * </p>
+   */
+  public void setConfigurationCache(boolean enabled) {
+    if (!enabled) {
+      configurationStore = null;
+      return;
+    }
+    if (configurationStore == null) {
+      configurationStore = new ConfigurationStore(new File(Filesystem.getOperatingDirectory(), CONFIGURATION_STORE));
+    }
+  }
+
+  Executor configurationExecutor() {
+    return configurationExecutor;
+  }
+
+  ConfigurationStore configurationStore() {
+    return configurationStore;
+  }
+
+  /**
+   * Waits for every registered controller to finish configuring, saves the configuration cache if it's enabled, and
+   * logs a report of how long each newly configured controller took. Called automatically by the first periodic()
+   * after new controllers are created, but can be called at the end of robotInit() to surface configuration errors
+   * earlier.
+   *
+   * @throws MotorConfigurationError or any other exception thrown while configuring a controller, after waiting for
+   *                                 all of them
+   */
+  public void awaitConfiguration() {
+    RuntimeException failure = null;
+    for (int i = 0; i < motorCount; i++) {
+      try {
+        motors[i].awaitConfiguration();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (configurationStore != null) {
+      configurationStore.save();
+    }
+    if (!configurationFinished) {
+      configurationFinished = true;
+      logConfigurationReport();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void logConfigurationReport() {
+    StringBuilder devices = new StringBuilder();
+    int count = 0;
+    int unchanged = 0;
+    long total = 0;
+    long end = configurationBatchStart;
+    for (int i = 0; i < motorCount; i++) {
+      SuController motor = motors[i];
+      if (motor.configurationReported || motor.configurationNanos < 0) {
+        continue;
+      }
+      motor.configurationReported = true;
+      count++;
+      total += motor.configurationNanos;
+      end = Math.max(end, motor.configurationStartNanos + motor.configurationNanos);
+      if (motor.configurationUnchanged()) {
+        unchanged++;
+      }
+      devices.append(String.format("%n  %s: %.1fms%s", motor.logger.getName(), motor.configurationNanos / 1e6,
+          motor.configurationUnchanged() ? " (unchanged)" : ""));
+    }
+    if (count == 0) {
+      return;
+    }
+    logger.info(String.format("configured %d motors in %.1fms (%.1fms across all devices, %d unchanged):%s", count,
+        (end - configurationBatchStart) / 1e6, total / 1e6, unchanged, devices));
+  }
+
+  /**
+   * The total number of writes suppressed by every registered controller, see {@link SuController#suppressedWrites()}.
+   */
+  public long suppressedWrites() {
+    long total = 0;
+    for (int i = 0; i < motorCount; i++) {
+      total += motors[i].suppressedWrites();
+    }
+    return total;
+  }
+
+  /**
+   * Records the state of every configured controller at the end of each cycle with the given recorder, or stops
+   * recording if it's null. The previous recorder, if any, is not closed.
+   */
+  public void setTelemetryRecorder(TelemetryRecorder recorder) {
+    telemetry = recorder;
+  }
+
+  public TelemetryRecorder telemetryRecorder() {
+    return telemetry;
+  }
+
+  /**
+   * Enables parallel ticking with the given number of worker threads, or disables it if threads is 0. The scheduler
+   * thread also ticks a share of the controllers, so with N groups, N - 1 threads is enough to tick every group
+   * concurrently; more threads than that are never used.
+   * 
+   * <p>
+   * Ticks of controllers in different groups run at the same time, so each controller's tick() must only touch state
+   * owned by its own group. periodic() does not return until every controller has been ticked, so calls made from the
+   * scheduler thread, such as set(), never overlap with ticks.
+   * </p>
+   * 
+   * @param threads the number of worker threads to use, or 0 to tick serially on the scheduler thread
+   */
+  public void setParallelTicks(int threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("thread count must not be negative");
+    }
+    if (parallel != null) {
+      parallel.close();
+      parallel = null;
+    }
+    assignment = null;
+    if (threads > 0) {
+      parallel = new ParallelTicker(threads);
     }
   }
 
   protected void addMotor(SuController motor) {
-    motors.add(motor);
+    if (motor.id >= 0) {
+      return;
+    }
+    if (motorCount == motors.length) {
+      motors = Arrays.copyOf(motors, motors.length * 2);
+    }
+    motor.id = nextId++;
+    motors[motorCount++] = motor;
+    assignment = null;
+    if (configurationFinished) {
+      configurationFinished = false;
+      configurationBatchStart = System.nanoTime();
+    }
+    if (timingEnabled) {
+      allocateTiming(motor);
+    }
+  }
+
+  /**
+   * Removes a controller so that it is no longer ticked. The controller keeps its ID, which is not reused. Mainly
+   * useful for tests and simulation, which create controllers repeatedly.
+   * 
+   * @return true if the controller was registered
+   */
+  public boolean removeMotor(SuController motor) {
+    int index = indexOf(motor.id);
+    if (index < 0 || motors[index] != motor) {
+      return false;
+    }
+    System.arraycopy(motors, index + 1, motors, index, motorCount - index - 1);
+    motors[--motorCount] = null;
+    assignment = null;
+    SoftPidLoop.unregister(motor);
+    if (slowestLastCycle == motor) {
+      slowestLastCycle = null;
+    }
+    return true;
+  }
+
+  /**
+   * Removes every registered controller.
+   */
+  public void removeAllMotors() {
+    for (int i = 0; i < motorCount; i++) {
+      SoftPidLoop.unregister(motors[i]);
+    }
+    Arrays.fill(motors, 0, motorCount, null);
+    motorCount = 0;
+    assignment = null;
+    slowestLastCycle = null;
+  }
+
+  /**
+   * The number of registered controllers.
+   */
+  public int motorCount() {
+    return motorCount;
+  }
+
+  /**
+   * The registered controller at the given position in tick order, from 0 to motorCount() - 1. Together with
+   * motorCount() this allows iterating over controllers without allocating.
+   */
+  public SuController motorAt(int index) {
+    if (index < 0 || index >= motorCount) {
+      throw new IndexOutOfBoundsException("motor index " + index + " out of range for " + motorCount + " motors");
+    }
+    return motors[index];
+  }
+
+  /**
+   * Finds a registered controller by its ID.
+   * 
+   * @return the controller, or null if no registered controller has that ID
+   */
+  public SuController motorById(int id) {
+    int index = indexOf(id);
+    return index < 0 ? null : motors[index];
+  }
+
+  private int indexOf(int id) {
+    if (id < 0) {
+      return -1;
+    }
+    int low = 0;
+    int high = motorCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midId = motors[mid].id;
+      if (midId < id) {
+        low = mid + 1;
+      } else if (midId > id) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Enables or disables timing of every controller's tick() and set() calls, and of the total time spent ticking
+   * controllers each cycle. Timing costs two calls to System.nanoTime() and a histogram update per controller per call
+   * while enabled, and a single check per call while disabled. Statistics are reset whenever timing is enabled.
+   *
+   * <p>
+   * Per-controller statistics are read with {@link SuController#tickTiming()} and {@link SuController#setTiming()},
+   * cycle statistics with {@link #cycleTiming()}.
+   * </p>
+   */
+  public void setTimingEnabled(boolean enabled) {
+    if (enabled == timingEnabled) {
+      return;
+    }
+    timingEnabled = enabled;
+
+    cycleTiming.reset();
+    overruns = 0;
+    slowestLastCycle = null;
+    for (int i = 0; i < motorCount; i++) {
+      SuController motor = motors[i];
+      if (enabled) {
+        allocateTiming(motor);
+      } else {
+        motor.tickTiming = null;
+        motor.setTiming = null;
+      }
+    }
+  }
+
+  public boolean timingEnabled() {
+    return timingEnabled;
+  }
+
+  /**
+   * Sets the time budget for ticking all controllers in a single cycle. Cycles that take longer are counted as
+   * overruns. Defaults to 5ms.
+   *
+   * @param seconds the budget in seconds
+   */
+  public void setCycleBudget(double seconds) {
+    cycleBudgetNanos = (long) (seconds * 1e9);
+  }
+
+  /**
+   * Timing statistics for the total time spent ticking all controllers each cycle. Only recorded while timing is
+   * enabled.
+   */
+  public TimingHistogram cycleTiming() {
+    return cycleTiming;
+  }
+
+  /**
+   * The number of cycles that exceeded the cycle budget since timing was enabled.
+   */
+  public long overrunCount() {
+    return overruns;
+  }
+
+  /**
+   * The controller whose tick() took the longest in the most recent cycle, or null if timing is not enabled.
+   */
+  public SuController slowestLastCycle() {
+    return slowestLastCycle;
+  }
+
+  private void allocateTiming(SuController motor) {
+    motor.tickTiming = new TimingHistogram();
+    motor.setTiming = new TimingHistogram();
   }
 }
@@ -0,0 +1,128 @@
+package frc.sorutil.motor;
+
+import java.util.concurrent.Phaser;
+
+/**
+ * ParallelTicker runs tick() on groups of controllers concurrently, using a small fixed set of worker threads plus the
+ * calling thread. Each cycle, the calling thread releases the workers, ticks its own share of the controllers, and then
+ * waits until every worker has finished, so a cycle takes as long as the slowest share rather than the sum of all of
+ * them.
+ */
+class ParallelTicker {
+  private final Thread[] workers;
+  private final Phaser phaser;
+
+  // Index 0 is ticked by the calling thread, index i + 1 by worker i. Written before the start barrier, so the workers
+  // always see the current assignment.
+  private SuController[][] assignment;
+  private boolean timed;
+  private volatile boolean running = true;
+  // The first exception or error thrown by a worker's share this cycle. Anything short of killing the worker thread
+  // would leave it registered with the phaser, and the next cycle would wait for it forever.
+  private volatile Throwable failure;
+
+  ParallelTicker(int threads) {
+    phaser = new Phaser(threads + 1);
+    workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final int share = i + 1;
+      workers[i] = new Thread(() -> work(share), "MotorManager tick " + share);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * The number of shares that work can be split into, including the calling thread.
+   */
+  int shares() {
+    return workers.length + 1;
+  }
+
+  /**
+   * Ticks every controller in the assignment, which must have exactly shares() entries, returning once all of them have
+   * been ticked. If any tick() threw, the first exception is rethrown here after all shares have completed, preferring
+   * one thrown by the calling thread's own share, with any from a worker attached as suppressed.
+   */
+  void tick(SuController[][] assignment, boolean timed) {
+    this.assignment = assignment;
+    this.timed = timed;
+    phaser.arriveAndAwaitAdvance();
+    Throwable own = null;
+    try {
+      tickAll(assignment[0]);
+    } catch (Throwable e) {
+      own = e;
+    }
+    phaser.arriveAndAwaitAdvance();
+
+    // Always cleared, so that a failure is never rethrown a cycle late.
+    Throwable worker = failure;
+    failure = null;
+    if (own != null) {
+      if (worker != null) {
+        own.addSuppressed(worker);
+      }
+      rethrow(own);
+    }
+    if (worker != null) {
+      rethrow(worker);
+    }
+  }
+
+  private static void rethrow(Throwable e) {
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    // tick() doesn't declare any checked exceptions, but they can still be thrown, e.g. by native code.
+    throw new RuntimeException(e);
+  }
+
+  /**
+   * Stops the worker threads. The ticker may not be used afterwards.
+   */
+  void close() {
+    running = false;
+    phaser.arriveAndAwaitAdvance();
+    phaser.forceTermination();
+  }
+
+  private void work(int share) {
+    while (true) {
+      phaser.arriveAndAwaitAdvance();
+      if (!running) {
+        return;
+      }
+      try {
+        tickAll(assignment[share]);
+      } catch (Throwable e) {
+        if (failure == null) {
+          failure = e;
+        }
+      } finally {
+        phaser.arriveAndAwaitAdvance();
+      }
+    }
+  }
+
+  private void tickAll(SuController[] motors) {
+    if (!timed) {
+      for (SuController motor : motors) {
+        motor.tick();
+      }
+      return;
+    }
+
+    long last = System.nanoTime();
+    for (SuController motor : motors) {
+      motor.tick();
+
+      long now = System.nanoTime();
+      motor.tickTiming.record(now - last);
+      last = now;
+    }
+  }
+}
@@ -91,6 +91,20 @@ public class SensorConfiguration {
     return source;
   }
 
+  /**
+   * Describes how this configuration sets up the motor controller, see MotorConfiguration.fingerprint().
+   */
+  String fingerprint() {
+    if (source instanceof ConnectedSensorSource) {
+      var connected = (ConnectedSensorSource) source;
+      return String.format("connected;%s;%d;%b", connected.type, connected.countsPerRev, connected.inverted());
+    }
+    if (source instanceof IntegratedSensorSource) {
+      return "integrated";
+    }
+    return "external";
+  }
+
   /**
    * IntegratedSensorSource configures the motor controller to use the integrated
    * sensor available on a motor for the
@@ -0,0 +1,274 @@
+package frc.sorutil.motor;
+
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkMaxAbsoluteEncoder;
+
+/**
+ * SensorStrategy is a SensorConfiguration resolved against a specific motor controller. It's built once, when the
+ * controller is configured, with every scale factor precomputed, so that reading the sensor and converting setpoints
+ * in the hot paths doesn't need to inspect the SensorConfiguration at all.
+ *
+ * <p>
+ * Positions are in degrees and velocities in RPM, both at the output of the mechanism (i.e. with the SensorConfiguration
+ * outputOffset applied). Native values are in whatever unit the motor controller's closed loop expects.
+ * </p>
+ */
+public abstract class SensorStrategy {
+  /**
+   * Used when a controller has no SensorConfiguration. Reads return 0, and attempting closed loop control fails with a
+   * MotorConfigurationError describing the problem.
+   */
+  static final SensorStrategy NONE = new None();
+
+  SensorStrategy() {}
+
+  /**
+   * The current position of the output, in degrees.
+   */
+  public abstract double position();
+
+  /**
+   * The current velocity of the output, in RPM.
+   */
+  public abstract double velocity();
+
+  /**
+   * Converts an output position in degrees into the native unit of the controller's closed loop.
+   */
+  public abstract double toNativePosition(double degrees);
+
+  /**
+   * Converts an output velocity in RPM into the native unit of the controller's closed loop.
+   */
+  public abstract double toNativeVelocity(double rpm);
+
+  /**
+   * Overrides the current position of the sensor, in output degrees.
+   */
+  public abstract void setPosition(double degrees);
+
+  /**
+   * Whether closed loop control must be done in software (i.e. with soft PID), because the sensor isn't connected to
+   * the motor controller. Soft PID works directly in output units, so the native conversions are the identity.
+   */
+  public boolean soft() {
+    return false;
+  }
+
+  static void checkOffset(double outputOffset) {
+    if (outputOffset == 0 || !Double.isFinite(outputOffset)) {
+      throw new MotorConfigurationError("sensor outputOffset must be a non-zero number, got: " + outputOffset);
+    }
+  }
+
+  private static final class None extends SensorStrategy {
+    @Override
+    public double position() {
+      return 0;
+    }
+
+    @Override
+    public double velocity() {
+      return 0;
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      throw new MotorConfigurationError("position control requires a SensorConfiguration, but none was provided");
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      throw new MotorConfigurationError("velocity control requires a SensorConfiguration, but none was provided");
+    }
+
+    @Override
+    public void setPosition(double degrees) {}
+  }
+
+  /**
+   * A sensor connected to the RoboRIO, used with soft PID.
+   */
+  static final class External extends SensorStrategy {
+    final SensorConfiguration.ExternalSensor sensor;
+
+    External(SensorConfiguration.ExternalSensorSource source) {
+      this.sensor = source.sensor;
+    }
+
+    @Override
+    public double position() {
+      return sensor.position();
+    }
+
+    @Override
+    public double velocity() {
+      return sensor.velocity();
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      return degrees;
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      return rpm;
+    }
+
+    @Override
+    public void setPosition(double degrees) {
+      sensor.setPosition(degrees);
+    }
+
+    @Override
+    public boolean soft() {
+      return true;
+    }
+  }
+
+  /**
+   * The selected sensor of a CTRE controller, whose native units are counts for position and counts per 100ms for
+   * velocity.
+   */
+  static final class Ctre extends SensorStrategy {
+    private final BaseMotorController controller;
+    private final double nativePerDegree;
+    private final double degreesPerNative;
+    private final double nativePerRpm;
+    private final double rpmPerNative;
+    private final String velocityError;
+
+    /**
+     * @param nativePerSensorRev native position units per revolution of the sensor
+     * @param outputOffset the SensorConfiguration outputOffset
+     * @param velocityError if non-null, velocity control is not supported and fails with this message
+     */
+    Ctre(BaseMotorController controller, double nativePerSensorRev, double outputOffset, String velocityError) {
+      checkOffset(outputOffset);
+      this.controller = controller;
+      this.nativePerDegree = outputOffset * nativePerSensorRev / 360.0;
+      this.degreesPerNative = 1 / nativePerDegree;
+      // rpm -> revs per 100ms: / 60 / 10
+      this.nativePerRpm = outputOffset * nativePerSensorRev / 600.0;
+      this.rpmPerNative = 1 / nativePerRpm;
+      this.velocityError = velocityError;
+    }
+
+    @Override
+    public double position() {
+      return controller.getSelectedSensorPosition() * degreesPerNative;
+    }
+
+    @Override
+    public double velocity() {
+      return controller.getSelectedSensorVelocity() * rpmPerNative;
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      return degrees * nativePerDegree;
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      if (velocityError != null) {
+        throw new MotorConfigurationError(velocityError);
+      }
+      return rpm * nativePerRpm;
+    }
+
+    @Override
+    public void setPosition(double degrees) {
+      controller.setSelectedSensorPosition(degrees * nativePerDegree);
+    }
+  }
+
+  /**
+   * A relative encoder on a Spark MAX, either the integrated NEO sensor or an alternate encoder, whose native units
+   * are revolutions and RPM.
+   */
+  static final class RevRelative extends SensorStrategy {
+    private final RelativeEncoder encoder;
+    private final double revsPerDegree;
+    private final double degreesPerRev;
+    private final double outputOffset;
+
+    RevRelative(RelativeEncoder encoder, double outputOffset) {
+      checkOffset(outputOffset);
+      this.encoder = encoder;
+      this.outputOffset = outputOffset;
+      this.revsPerDegree = outputOffset / 360.0;
+      this.degreesPerRev = 1 / revsPerDegree;
+    }
+
+    @Override
+    public double position() {
+      return encoder.getPosition() * degreesPerRev;
+    }
+
+    @Override
+    public double velocity() {
+      return encoder.getVelocity() / outputOffset;
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      return degrees * revsPerDegree;
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      return rpm * outputOffset;
+    }
+
+    @Override
+    public void setPosition(double degrees) {
+      encoder.setPosition(degrees * revsPerDegree);
+    }
+  }
+
+  /**
+   * An absolute encoder on a Spark MAX, whose native units are revolutions and RPM. Its position can't be overridden.
+   */
+  static final class RevAbsolute extends SensorStrategy {
+    private final SparkMaxAbsoluteEncoder encoder;
+    private final double revsPerDegree;
+    private final double degreesPerRev;
+    private final double outputOffset;
+
+    RevAbsolute(SparkMaxAbsoluteEncoder encoder, double outputOffset) {
+      checkOffset(outputOffset);
+      this.encoder = encoder;
+      this.outputOffset = outputOffset;
+      this.revsPerDegree = outputOffset / 360.0;
+      this.degreesPerRev = 1 / revsPerDegree;
+    }
+
+    @Override
+    public double position() {
+      return encoder.getPosition() * degreesPerRev;
+    }
+
+    @Override
+    public double velocity() {
+      return encoder.getVelocity() / outputOffset;
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      return degrees * revsPerDegree;
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      return rpm * outputOffset;
+    }
+
+    @Override
+    public void setPosition(double degrees) {
+      throw new MotorConfigurationError("can't override the position of an absolute sensor");
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package frc.sorutil.motor;
+
+/**
+ * SimMotor describes a brushed or brushless DC motor for {@link SuSimController}, from the figures on its datasheet.
+ * The motor is modelled as an ideal DC motor: torque is proportional to current, and back-EMF is proportional to speed.
+ * Electrical transients are ignored, since they settle far faster than any mechanism moves.
+ */
+public final class SimMotor {
+  public static final SimMotor FALCON_500 = new SimMotor(12, 4.69, 257, 1.5, 6380);
+  public static final SimMotor NEO = new SimMotor(12, 2.6, 105, 1.8, 5676);
+  public static final SimMotor NEO_550 = new SimMotor(12, 0.97, 100, 1.4, 11000);
+  public static final SimMotor CIM = new SimMotor(12, 2.42, 133, 2.7, 5310);
+  public static final SimMotor PRO_775 = new SimMotor(12, 0.71, 134, 0.7, 18730);
+
+  /** Winding resistance in ohms. */
+  final double resistance;
+  /** Torque per amp, in Nm/A. */
+  final double torqueConstant;
+  /** Speed per volt of back-EMF, in rad/s/V. */
+  final double velocityConstant;
+
+  /**
+   * @param nominalVoltage the voltage the other figures were measured at
+   * @param stallTorque    the torque at stall, in Nm
+   * @param stallCurrent   the current at stall, in amps
+   * @param freeCurrent    the current with no load, in amps
+   * @param freeSpeedRpm   the speed with no load, in RPM
+   */
+  public SimMotor(double nominalVoltage, double stallTorque, double stallCurrent, double freeCurrent,
+      double freeSpeedRpm) {
+    if (!(nominalVoltage > 0 && stallTorque > 0 && stallCurrent > freeCurrent && freeCurrent >= 0
+        && freeSpeedRpm > 0)) {
+      throw new IllegalArgumentException("motor figures must be positive, with stall current above free current");
+    }
+    this.resistance = nominalVoltage / stallCurrent;
+    this.torqueConstant = stallTorque / stallCurrent;
+    this.velocityConstant = freeSpeedRpm * 2 * Math.PI / 60 / (nominalVoltage - resistance * freeCurrent);
+  }
+}
@@ -0,0 +1,144 @@
+package frc.sorutil.motor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.sorutil.TimingHistogram;
+
+/**
+ * SoftPidLoop runs the soft PID controllers of SuControllers on a dedicated Notifier thread, at a higher rate than the
+ * command scheduler. Controllers opt in with {@link MotorConfiguration#setSoftPidPeriod(Double)}; all controllers
+ * with the same period share a single loop.
+ *
+ * <p>
+ * set() on the scheduler thread only publishes the new setpoint, which the loop picks up on its next iteration without
+ * locking. The loop also records how far each iteration's start deviated from the configured period, which can be read
+ * with {@link #jitterSummary(double[])}.
+ * </p>
+ */
+public final class SoftPidLoop {
+  private static final Map<Long, SoftPidLoop> loops = new HashMap<>();
+
+  private final double period;
+  private final long periodNanos;
+  private final Notifier notifier;
+
+  // Copy on write, so that the loop thread can iterate without locking.
+  private volatile SuController[] controllers = new SuController[0];
+
+  private final TimingHistogram jitter = new TimingHistogram();
+  private long lastStart;
+
+  private SoftPidLoop(double period) {
+    this.period = period;
+    this.periodNanos = (long) (period * 1e9);
+    this.notifier = new Notifier(this::run);
+    notifier.setName(String.format("SoftPidLoop(%.1fms)", period * 1000));
+  }
+
+  /**
+   * Adds a controller to the loop for the given period, creating and starting the loop if needed.
+   */
+  static synchronized SoftPidLoop register(SuController controller, double period) {
+    if (!(period > 0)) {
+      throw new MotorConfigurationError("soft PID period must be positive, got: " + period);
+    }
+    long key = (long) (period * 1e9);
+    SoftPidLoop loop = loops.get(key);
+    if (loop == null) {
+      loop = new SoftPidLoop(period);
+      loops.put(key, loop);
+      loop.notifier.startPeriodic(period);
+    }
+    loop.add(controller);
+    return loop;
+  }
+
+  /**
+   * Removes a controller from whichever loop it is in. Loops keep running once started, even when empty.
+   */
+  static synchronized void unregister(SuController controller) {
+    for (SoftPidLoop loop : loops.values()) {
+      loop.remove(controller);
+    }
+  }
+
+  /**
+   * The loop that the given controller's soft PID runs on, or null if it runs in tick().
+   */
+  public static SoftPidLoop of(SuController controller) {
+    return controller.softPidLoop;
+  }
+
+  /**
+   * The configured period of this loop, in seconds.
+   */
+  public double period() {
+    return period;
+  }
+
+  /**
+   * Writes a summary of the loop's timing jitter, i.e. the absolute difference between the actual and configured time
+   * between iterations, without allocating. The layout is {count, min, mean, p99, max}, all in nanoseconds.
+   *
+   * @param out an array of at least 5 elements
+   */
+  public void jitterSummary(double[] out) {
+    synchronized (jitter) {
+      jitter.summary(out);
+    }
+  }
+
+  public void resetJitter() {
+    synchronized (jitter) {
+      jitter.reset();
+    }
+  }
+
+  private void add(SuController controller) {
+    SuController[] current = controllers;
+    for (SuController c : current) {
+      if (c == controller) {
+        return;
+      }
+    }
+    SuController[] next = Arrays.copyOf(current, current.length + 1);
+    next[current.length] = controller;
+    controllers = next;
+  }
+
+  private void remove(SuController controller) {
+    SuController[] current = controllers;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == controller) {
+        SuController[] next = new SuController[current.length - 1];
+        System.arraycopy(current, 0, next, 0, i);
+        System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+        controllers = next;
+        return;
+      }
+    }
+  }
+
+  private void run() {
+    long start = System.nanoTime();
+    if (lastStart != 0) {
+      synchronized (jitter) {
+        jitter.record(Math.abs(start - lastStart - periodNanos));
+      }
+    }
+    lastStart = start;
+
+    for (SuController controller : controllers) {
+      try {
+        controller.runSoftPid();
+      } catch (RuntimeException e) {
+        // Stop driving a controller whose loop is failing, rather than leaving the last output applied. Not with stop(),
+        // which may only be called from the scheduler thread.
+        controller.logger.severe("soft PID loop failed, disabling soft PID: " + e);
+        controller.failSoftPid();
+      }
+    }
+  }
+}
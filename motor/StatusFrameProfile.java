@@ -0,0 +1,141 @@
+package frc.sorutil.motor;
+
+import java.util.Arrays;
+
+/**
+ * StatusFrameProfile sets how often a motor controller sends each kind of status frame over CAN, in milliseconds.
+ * Slowing down frames a motor doesn't need is the easiest way to reduce CAN bus utilization: a follower, for example,
+ * doesn't need to report its sensor at all.
+ *
+ * <p>
+ * The frames are grouped by what they report rather than by vendor, and each motor controller maps them to its own
+ * frames. Where a vendor frame carries data from more than one group, it's sent at the fastest of their periods.
+ * Periods are clamped to what the vendor supports (255ms for CTRE, 65535ms for REV). A frame without a period is left
+ * at the vendor default. Periods don't survive a reset of the motor controller, e.g. after a brownout, so every motor
+ * controller re-applies its profile when it detects one.
+ * </p>
+ *
+ * <p>
+ * Profiles are immutable; use {@link #with(Frame, int)} to customize one of the presets, or start from DEFAULT.
+ * </p>
+ */
+public final class StatusFrameProfile {
+  public static enum Frame {
+    /** Applied output, faults and limit switches. A Spark MAX leader also uses this frame to drive its followers. */
+    GENERAL,
+    /** Velocity of the selected or integrated sensor. */
+    VELOCITY,
+    /** Position of the selected or integrated sensor. */
+    POSITION,
+    /** Raw values of a sensor connected directly to the motor controller. */
+    CONNECTED_SENSOR,
+    /** Temperature, bus voltage and current. */
+    TELEMETRY,
+    /** Closed loop target and error, only reported by CTRE controllers. */
+    CLOSED_LOOP,
+  }
+
+  private static final int FAST = 10;
+  private static final int NORMAL = 20;
+  private static final int SLOW = 200;
+  private static final int SLOWEST = 1000;
+
+  /**
+   * Leaves every frame at the vendor default.
+   */
+  public static final StatusFrameProfile DEFAULT = new StatusFrameProfile(new Integer[Frame.values().length]);
+
+  /**
+   * For motors following another controller, which only need to report faults.
+   */
+  public static final StatusFrameProfile FOLLOWER = DEFAULT
+      .with(Frame.GENERAL, SLOW)
+      .with(Frame.VELOCITY, SLOWEST)
+      .with(Frame.POSITION, SLOWEST)
+      .with(Frame.CONNECTED_SENSOR, SLOWEST)
+      .with(Frame.TELEMETRY, SLOWEST)
+      .with(Frame.CLOSED_LOOP, SLOWEST);
+
+  /**
+   * For motors run in percent output or voltage control whose sensor isn't read.
+   */
+  public static final StatusFrameProfile OPEN_LOOP = DEFAULT
+      .with(Frame.GENERAL, NORMAL)
+      .with(Frame.VELOCITY, SLOW)
+      .with(Frame.POSITION, SLOWEST)
+      .with(Frame.CONNECTED_SENSOR, SLOWEST)
+      .with(Frame.TELEMETRY, SLOW)
+      .with(Frame.CLOSED_LOOP, SLOWEST);
+
+  /**
+   * For velocity controlled motors such as shooters and drive wheels, whose position isn't read.
+   */
+  public static final StatusFrameProfile VELOCITY_ONLY = DEFAULT
+      .with(Frame.GENERAL, NORMAL)
+      .with(Frame.VELOCITY, NORMAL)
+      .with(Frame.POSITION, SLOWEST)
+      .with(Frame.CONNECTED_SENSOR, NORMAL)
+      .with(Frame.TELEMETRY, SLOW)
+      .with(Frame.CLOSED_LOOP, SLOWEST);
+
+  /**
+   * For position controlled mechanisms such as arms and elevators, which need fresh sensor data every cycle.
+   */
+  public static final StatusFrameProfile POSITION_CRITICAL = DEFAULT
+      .with(Frame.GENERAL, FAST)
+      .with(Frame.VELOCITY, FAST)
+      .with(Frame.POSITION, FAST)
+      .with(Frame.CONNECTED_SENSOR, FAST)
+      .with(Frame.TELEMETRY, SLOW)
+      .with(Frame.CLOSED_LOOP, NORMAL);
+
+  private final Integer[] periods;
+
+  private StatusFrameProfile(Integer[] periods) {
+    this.periods = periods;
+  }
+
+  /**
+   * Returns a copy of this profile with the given frame sent every periodMs milliseconds.
+   */
+  public StatusFrameProfile with(Frame frame, int periodMs) {
+    if (periodMs <= 0) {
+      throw new IllegalArgumentException("status frame period must be positive, got: " + periodMs);
+    }
+    Integer[] next = Arrays.copyOf(periods, periods.length);
+    next[frame.ordinal()] = periodMs;
+    return new StatusFrameProfile(next);
+  }
+
+  /**
+   * The period of the given frame in milliseconds, or null if it's left at the vendor default.
+   */
+  public Integer period(Frame frame) {
+    return periods[frame.ordinal()];
+  }
+
+  /**
+   * The period for a CTRE frame carrying data from the given frames, or -1 to leave it at the default.
+   */
+  int ctrePeriod(Frame... frames) {
+    return combined(255, frames);
+  }
+
+  /**
+   * The period for a REV frame carrying data from the given frames, or -1 to leave it at the default.
+   */
+  int revPeriod(Frame... frames) {
+    return combined(65535, frames);
+  }
+
+  private int combined(int max, Frame[] frames) {
+    int result = -1;
+    for (Frame frame : frames) {
+      Integer period = periods[frame.ordinal()];
+      if (period != null && (result < 0 || period < result)) {
+        result = period;
+      }
+    }
+    return Math.min(result, max);
+  }
+}
@@ -1,9 +1,16 @@
 package frc.sorutil.motor;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
+import com.ctre.phoenix.ErrorCode;
+import com.revrobotics.REVLibError;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.wpilibj.motorcontrol.MotorController;
+import frc.sorutil.Errors;
+import frc.sorutil.TimingHistogram;
 
 public abstract class SuController {
   public static final double DEFAULT_VOLTAGE_COMPENSTAION = 12.5;
@@ -33,12 +40,64 @@ public abstract class SuController {
   protected final MotorConfiguration config;
   protected final SensorConfiguration sensorConfig;
 
+  /**
+   * sensor is the sensorConfig resolved for this controller, set once in configure(). Hot paths should use it rather
+   * than inspecting sensorConfig.
+   */
+  protected SensorStrategy sensor = SensorStrategy.NONE;
+
   protected PIDController softPidController;
-  protected boolean softPidControllerEnabled;
+  protected volatile boolean softPidControllerEnabled;
   /**
    * softPidControllerMode is true when mode is velocity, false when it's position.
    */
-  protected boolean softPidControllerMode;
+  protected volatile boolean softPidControllerMode;
+
+  // Setpoint handoff to the SoftPidLoop thread. The scheduler thread is the only writer; softPidSequence is odd while a
+  // write is in progress, so the loop can detect and retry a torn read of mode and setpoint without locking.
+  private volatile double softPidSetpoint;
+  private volatile int softPidSequence;
+  // Only taken when writing the output of a high rate loop, and when disabling it, so that the loop can never
+  // overwrite an output set after soft PID was turned off.
+  private final Object softPidOutputLock = new Object();
+  // The high rate loop this controller's soft PID runs on, or null if it runs in tick().
+  SoftPidLoop softPidLoop;
+  // Set by the SoftPidLoop thread when soft PID failed, so that the scheduler thread forgets the last setpoint.
+  private volatile boolean softPidFailed;
+
+  // Assigned by the MotorManager on registration.
+  int id = -1;
+
+  // The last setpoint passed to setOutput(), used to drop redundant writes, see write().
+  private ControlMode lastMode;
+  private double lastSetpoint;
+  private long lastWriteNanos;
+  private boolean pendingWrite;
+  private double pendingSetpoint;
+  private long suppressedWrites;
+
+  // Sensor reads cached for the MotorManager cycle they were made in, see outputPosition(). Only meant to be used from
+  // the scheduler thread, the soft PID loop reads the sensor directly.
+  private double cachedPosition;
+  private long positionCycle = -1;
+  private double cachedVelocity;
+  private long velocityCycle = -1;
+
+  // Timing statistics, only allocated while timing is enabled in the MotorManager.
+  TimingHistogram tickTiming;
+  TimingHistogram setTiming;
+
+  // ---- Configuration, see startConfiguration() ----
+  private CompletableFuture<Void> configuration;
+  // Set once configure() has completed successfully, checked before touching the device from the scheduler thread.
+  private volatile boolean configured;
+  private boolean configurationChanged = true;
+  private boolean configurationOk;
+  private int configurationMarker;
+  long configurationStartNanos;
+  long configurationNanos = -1;
+  // Set by the MotorManager once this controller has been included in a startup report.
+  boolean configurationReported;
 
   public SuController (MotorController controller, Logger logger) {
     this(controller, new MotorConfiguration(), logger);
@@ -55,13 +114,289 @@ public abstract class SuController {
     this.sensorConfig = sensorConfig;
     this.internalController = controller;
     this.config = config;
+  }
+
+  /**
+   * Configures the motor controller by calling configure(), either immediately or, if
+   * {@link MotorManager#setParallelConfiguration(int)} is enabled, on a configuration thread. Subclasses must call
+   * this at the end of their constructor, once every field that configure() uses has been assigned.
+   *
+   * <p>
+   * Calls that need the controller to be configured, such as set(), wait for configuration to complete. Errors thrown
+   * by configure() on a configuration thread are rethrown from those calls, and from
+   * {@link MotorManager#awaitConfiguration()}.
+   * </p>
+   */
+  protected final synchronized void startConfiguration() {
+    if (configuration != null) {
+      return;
+    }
+    Executor executor = MotorManager.instance().configurationExecutor();
+    if (executor != null) {
+      configuration = CompletableFuture.runAsync(this::runConfiguration, executor);
+      return;
+    }
+
+    configuration = new CompletableFuture<>();
+    try {
+      runConfiguration();
+      configuration.complete(null);
+    } catch (RuntimeException e) {
+      configuration.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for this controller's configuration to complete, starting it if it hasn't been already.
+   *
+   * @throws MotorConfigurationError or any other exception thrown by configure()
+   */
+  public void awaitConfiguration() {
+    if (configured) {
+      return;
+    }
+    startConfiguration();
+    try {
+      configuration.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void runConfiguration() {
+    configurationStartNanos = System.nanoTime();
+
+    ConfigurationStore store = MotorManager.instance().configurationStore();
+    String key = logger.getName();
+    String fingerprint = configurationFingerprint();
+    int hash = fingerprint.hashCode();
+    configurationMarker = hash == 0 ? 1 : hash;
+    if (store != null) {
+      configurationChanged = !store.matches(key, fingerprint);
+      if (!configurationChanged && !deviceConfigured()) {
+        logger.warning("settings on the motor controller don't match the stored configuration, it may have been "
+            + "replaced or reset, configuring it fully");
+        configurationChanged = true;
+      }
+    }
+
+    configurationOk = true;
+    configure(config, sensorConfig);
+
+    if (store != null) {
+      if (configurationOk) {
+        store.put(key, fingerprint);
+      } else {
+        // Write every setting again next time, rather than trusting a partial configuration.
+        store.remove(key);
+      }
+    }
+    configurationNanos = System.nanoTime() - configurationStartNanos;
+    configured = true;
+  }
+
+  /**
+   * Whether configure() has completed successfully, without waiting for it.
+   */
+  boolean configured() {
+    return configured;
+  }
+
+  private String configurationFingerprint() {
+    String sensor = sensorConfig == null ? "none" : sensorConfig.fingerprint();
+    return config.fingerprint() + ";" + sensor + ";" + deviceFingerprint();
+  }
+
+  /**
+   * Describes the settings that configure() writes to the motor controller as they're actually applied, including the
+   * defaults used for settings that the MotorConfiguration leaves unset, so that changing a default invalidates the
+   * stored configuration too.
+   */
+  protected String deviceFingerprint() {
+    return "";
+  }
+
+  /**
+   * Checks, when the stored configuration says that the motor controller is configured, that the settings on the device
+   * are still the ones written by configure(). This catches a controller that has been replaced by another with the
+   * same CAN ID, or reset to factory defaults from outside the robot program. Called before configure(), on the same
+   * thread. The default trusts the stored configuration.
+   */
+  protected boolean deviceConfigured() {
+    return true;
+  }
+
+  /**
+   * A non-zero hash of the configuration being applied, for motor controllers that can store an arbitrary value to
+   * check in deviceConfigured().
+   */
+  protected int configurationMarker() {
+    return configurationMarker;
+  }
 
-    this.configure(config, sensorConfig);
+  /**
+   * Whether the settings stored on the motor controller itself need to be written by configure(). This is always true
+   * unless {@link MotorManager#setConfigurationCache(boolean)} is enabled, in which case it's false when the
+   * configuration is identical to the one last written to this controller successfully. Settings that the motor
+   * controller doesn't keep across a power cycle must be applied regardless.
+   */
+  protected boolean configurationChanged() {
+    return configurationChanged;
+  }
+
+  /**
+   * Handles the result of a configuration call from configure(). As well as logging it, a failed call means the
+   * configuration isn't cached, so that every setting is written again next time.
+   */
+  protected void handleConfigError(ErrorCode e, String desc) {
+    if (e != ErrorCode.OK) {
+      configurationOk = false;
+    }
+    Errors.handleCtre(e, logger, desc);
+  }
+
+  /**
+   * As {@link #handleConfigError(ErrorCode, String)}, for REV motor controllers.
+   */
+  protected void handleConfigError(REVLibError e, String desc) {
+    if (e != REVLibError.kOk) {
+      configurationOk = false;
+    }
+    Errors.handleRev(e, logger, desc);
+  }
+
+  /**
+   * How long configure() took for this controller in seconds, or NaN if it hasn't completed.
+   */
+  public double configurationTime() {
+    long nanos = configured ? configurationNanos : -1;
+    return nanos < 0 ? Double.NaN : nanos / 1e9;
+  }
+
+  /**
+   * Whether configure() found the settings stored on the controller unchanged, and so didn't rewrite them. See
+   * {@link MotorManager#setConfigurationCache(boolean)}.
+   */
+  public boolean configurationUnchanged() {
+    return configured && !configurationChanged;
+  }
+
+  /**
+   * The ID assigned to this controller by the MotorManager, which is stable for the life of the program.
+   */
+  public int id() {
+    return id;
   }
 
   protected void configureSoftPid() {
+    sensor = new SensorStrategy.External((SensorConfiguration.ExternalSensorSource) sensorConfig.source());
+
+    Double period = motorConfig().softPidPeriod();
+    if (period == null) {
+      softPidController = new PIDController(motorConfig().pidProfile().p(), motorConfig().pidProfile().i(),
+          motorConfig().pidProfile().d());
+      return;
+    }
     softPidController = new PIDController(motorConfig().pidProfile().p(), motorConfig().pidProfile().i(),
-        motorConfig().pidProfile().d());
+        motorConfig().pidProfile().d(), period);
+    softPidLoop = SoftPidLoop.register(this, period);
+  }
+
+  /**
+   * Starts (or updates) soft PID control towards the given setpoint, using the external sensor. When running in tick(),
+   * the first output is applied immediately; when running on a SoftPidLoop, the setpoint is handed to the loop, which
+   * applies it on its next iteration.
+   * 
+   * @param velocity true for velocity control, false for position control
+   * @param setpoint the setpoint, in the units of the external sensor
+   */
+  protected void setSoftPid(boolean velocity, double setpoint) {
+    softPidSequence++;
+    softPidControllerMode = velocity;
+    softPidSetpoint = setpoint;
+    softPidSequence++;
+    softPidControllerEnabled = true;
+
+    if (softPidLoop != null) {
+      return;
+    }
+    double current = velocity ? sensor.velocity() : sensor.position();
+    double output = softPidController.calculate(current, setpoint);
+    internalController.set(output);
+  }
+
+  /**
+   * Stops soft PID control. Once this returns, no further soft PID output will be applied to the motor until
+   * setSoftPid() is called again.
+   */
+  protected void disableSoftPid() {
+    if (!softPidControllerEnabled) {
+      return;
+    }
+    if (softPidLoop == null) {
+      softPidControllerEnabled = false;
+      return;
+    }
+    synchronized (softPidOutputLock) {
+      softPidControllerEnabled = false;
+    }
+  }
+
+  /**
+   * Runs one iteration of soft PID from tick(), if it's enabled and not running on a SoftPidLoop.
+   */
+  protected void tickSoftPid() {
+    if (!softPidControllerEnabled || softPidLoop != null) {
+      return;
+    }
+    double current = softPidControllerMode ? sensor.velocity() : sensor.position();
+    double output = softPidController.calculate(current);
+    internalController.set(output);
+  }
+
+  /**
+   * Runs one iteration of soft PID on the SoftPidLoop thread.
+   */
+  void runSoftPid() {
+    if (!softPidControllerEnabled) {
+      return;
+    }
+
+    int sequence;
+    boolean velocity;
+    double setpoint;
+    do {
+      sequence = softPidSequence;
+      velocity = softPidControllerMode;
+      setpoint = softPidSetpoint;
+    } while ((sequence & 1) != 0 || sequence != softPidSequence);
+
+    double current = velocity ? sensor.velocity() : sensor.position();
+    double output = softPidController.calculate(current, setpoint);
+
+    synchronized (softPidOutputLock) {
+      // Drop the output if soft PID was disabled, or a new setpoint arrived, while it was being calculated.
+      if (softPidControllerEnabled && sequence == softPidSequence) {
+        internalController.set(output);
+      }
+    }
+  }
+
+  /**
+   * Called on the SoftPidLoop thread when runSoftPid() throws. Disables soft PID and sets the output to zero, touching
+   * nothing else, since the rest of the controller belongs to the scheduler thread. The next flushPendingWrite() then
+   * forgets the last setpoint, so that the keep-alive doesn't turn soft PID back on.
+   */
+  void failSoftPid() {
+    synchronized (softPidOutputLock) {
+      softPidControllerEnabled = false;
+      internalController.set(0);
+    }
+    softPidFailed = true;
   }
 
   protected MotorConfiguration motorConfig() {
@@ -72,7 +407,12 @@ public abstract class SuController {
     return sensorConfig;
   }
 
-  protected abstract void configure(MotorConfiguration config, SensorConfiguration sensorConfig); 
+  /**
+   * Applies the configuration to the motor controller. Called once, from startConfiguration(), possibly on a
+   * configuration thread. Settings stored on the motor controller itself only need to be written when
+   * configurationChanged() is true, and their results should be passed to handleConfigError().
+   */
+  protected abstract void configure(MotorConfiguration config, SensorConfiguration sensorConfig);
 
   public abstract MotorController rawController();
 
@@ -101,32 +441,268 @@ public abstract class SuController {
    *                 VOLTAGE: commands the motor controller to regulate directly
    *                 to the specified value in volts
    *                 </p>
+   *                 <p>
+   *                 Setpoints within the configured tolerance of the last one
+   *                 sent to the motor controller are dropped, see
+   *                 {@link MotorConfiguration#setSetpointTolerance(ControlMode, double)}.
+   *                 </p>
    * @param setpoint
    */
-  public abstract void set(ControlMode mode, double setpoint);
+  public void set(ControlMode mode, double setpoint) {
+    if (!configured) {
+      awaitConfiguration();
+    }
+    TimingHistogram timing = setTiming;
+    if (timing == null) {
+      write(mode, setpoint);
+      return;
+    }
+    long start = System.nanoTime();
+    write(mode, setpoint);
+    timing.record(System.nanoTime() - start);
+  }
+
+  /**
+   * Sends the setpoint to setOutput(), unless it's within the configured tolerance of the last setpoint sent, or the
+   * configured write rate has been reached, see {@link MotorConfiguration#setSetpointTolerance(ControlMode, double)}
+   * and {@link MotorConfiguration#setMaxWriteRate(Double)}.
+   */
+  private void write(ControlMode mode, double setpoint) {
+    pendingWrite = false;
+    Double maxWriteRate = config.maxWriteRate();
+    Double keepAlivePeriod = config.keepAlivePeriod();
+    long now = maxWriteRate != null || keepAlivePeriod != null ? writeClock() : 0;
+
+    if (mode == lastMode) {
+      if (Math.abs(setpoint - lastSetpoint) <= config.setpointTolerance(mode)) {
+        if (keepAlivePeriod == null || now - lastWriteNanos < keepAlivePeriod * 1e9) {
+          suppressedWrites++;
+          return;
+        }
+      } else if (maxWriteRate != null && now - lastWriteNanos < 1e9 / maxWriteRate) {
+        // Held back rather than dropped, flushPendingWrite() sends it once the rate allows.
+        pendingWrite = true;
+        pendingSetpoint = setpoint;
+        suppressedWrites++;
+        return;
+      }
+    }
+
+    lastMode = mode;
+    lastSetpoint = setpoint;
+    lastWriteNanos = now;
+    setOutput(mode, setpoint);
+  }
+
+  /**
+   * Called by the MotorManager at the start of every cycle to send a setpoint held back by the write rate limit, or
+   * re-send the last setpoint when the keep-alive period has passed.
+   */
+  void flushPendingWrite() {
+    if (softPidFailed) {
+      softPidFailed = false;
+      lastMode = null;
+      pendingWrite = false;
+      return;
+    }
+    if (lastMode == null) {
+      return;
+    }
+    Double keepAlivePeriod = config.keepAlivePeriod();
+    if (!pendingWrite && keepAlivePeriod == null) {
+      return;
+    }
+
+    long now = writeClock();
+    long sinceWrite = now - lastWriteNanos;
+    if (pendingWrite) {
+      Double maxWriteRate = config.maxWriteRate();
+      if (maxWriteRate != null && sinceWrite < 1e9 / maxWriteRate) {
+        return;
+      }
+      pendingWrite = false;
+      lastSetpoint = pendingSetpoint;
+    } else if (sinceWrite < keepAlivePeriod * 1e9) {
+      return;
+    }
+    lastWriteNanos = now;
+    setOutput(lastMode, lastSetpoint);
+  }
+
+  /**
+   * The time in nanoseconds that the write rate limit and keep-alive are measured with. Only differences between values
+   * are meaningful, as with System.nanoTime(), which is used unless a subclass keeps its own time.
+   */
+  protected long writeClock() {
+    return System.nanoTime();
+  }
+
+  /**
+   * The mode of the last setpoint sent to the motor controller, or null if none has been sent.
+   */
+  ControlMode lastMode() {
+    return lastMode;
+  }
+
+  /**
+   * The most recent setpoint requested with set(), including one held back by the write rate limit.
+   */
+  double requestedSetpoint() {
+    return pendingWrite ? pendingSetpoint : lastSetpoint;
+  }
+
+  /**
+   * The number of calls to set() that didn't immediately result in a write to the motor controller, because the
+   * setpoint was within tolerance of the last one sent or the write rate limit was reached.
+   */
+  public long suppressedWrites() {
+    return suppressedWrites;
+  }
+
+  /**
+   * Implements set() for a specific motor controller, see set() for the meaning of each control mode.
+   */
+  protected abstract void setOutput(ControlMode mode, double setpoint);
+
+  /**
+   * Timing statistics for calls to tick() on this controller, or null if timing is not enabled. See
+   * {@link MotorManager#setTimingEnabled(boolean)}.
+   */
+  public TimingHistogram tickTiming() {
+    return tickTiming;
+  }
 
   /**
-   * Stops the motor regardless of output mode.
+   * Timing statistics for calls to set() on this controller, or null if timing is not enabled. See
+   * {@link MotorManager#setTimingEnabled(boolean)}.
    */
-  public abstract void stop();
+  public TimingHistogram setTiming() {
+    return setTiming;
+  }
 
-  public abstract void follow(SuController other);
+  /**
+   * Stops the motor regardless of output mode. The last setpoint is forgotten, so that neither the write rate limit nor
+   * the keep-alive sends it again, and soft PID is disabled.
+   */
+  public final void stop() {
+    clearOutput();
+    stopOutput();
+  }
+
+  /**
+   * Makes this motor controller follow another. As with stop(), the last setpoint is forgotten and soft PID is
+   * disabled, so that nothing sent later on this controller's behalf cancels following.
+   */
+  public final void follow(SuController other) {
+    awaitConfiguration();
+    clearOutput();
+    followOutput(other);
+  }
+
+  /**
+   * Implements stop() for a specific motor controller.
+   */
+  protected abstract void stopOutput();
+
+  /**
+   * Implements follow() for a specific motor controller, which has been configured.
+   */
+  protected abstract void followOutput(SuController other);
+
+  private void clearOutput() {
+    disableSoftPid();
+    lastMode = null;
+    lastSetpoint = 0;
+    pendingWrite = false;
+  }
 
   /**
    * Using the SensorConfiguration on this motor, retreive the end effector position in degrees. This will take into
    * account the scaling factor provided in the SensorConfiguration.
+   *
+   * <p>
+   * The sensor is read at most once per MotorManager cycle, later calls in the same cycle return the cached value. Use
+   * {@link #outputPosition(boolean)} when the value must be read from the device.
+   * </p>
+   */
+  public double outputPosition() {
+    return outputPosition(false);
+  }
+
+  /**
+   * As {@link #outputPosition()}, but when fresh is true the sensor is always read from the device, and the cache is
+   * updated with the result.
    */
-  public abstract double outputPosition();
+  public double outputPosition(boolean fresh) {
+    if (!configured) {
+      awaitConfiguration();
+    }
+    long cycle = MotorManager.instance().cycle();
+    // Cycle 0 means the MotorManager hasn't run yet, so there's nothing to invalidate the cache with.
+    if (fresh || cycle == 0 || positionCycle != cycle) {
+      cachedPosition = readPosition();
+      positionCycle = cycle;
+    }
+    return cachedPosition;
+  }
 
   /**
    * Using the SensorConfiguration on this motor, retreive the end effector output velocity in RPM. This will take into
    * account the scaling factor provided in the SensorConfiguration.
+   *
+   * <p>
+   * As with outputPosition(), the sensor is read at most once per MotorManager cycle.
+   * </p>
    */
-  public abstract double outputVelocity();
+  public double outputVelocity() {
+    return outputVelocity(false);
+  }
+
+  /**
+   * As {@link #outputVelocity()}, but when fresh is true the sensor is always read from the device, and the cache is
+   * updated with the result.
+   */
+  public double outputVelocity(boolean fresh) {
+    if (!configured) {
+      awaitConfiguration();
+    }
+    long cycle = MotorManager.instance().cycle();
+    if (fresh || cycle == 0 || velocityCycle != cycle) {
+      cachedVelocity = readVelocity();
+      velocityCycle = cycle;
+    }
+    return cachedVelocity;
+  }
+
+  /**
+   * Reads the end effector position in degrees from the device, bypassing the cache.
+   */
+  protected double readPosition() {
+    return sensor.position();
+  }
+
+  /**
+   * Reads the end effector velocity in RPM from the device, bypassing the cache.
+   */
+  protected double readVelocity() {
+    return sensor.velocity();
+  }
 
   /**
    * setSensorPosition will override the current sensor position and update the internal counter to the new position. As
    * with outputPosition, the value is in degrees.
    */
-  public abstract void setSensorPosition(double position);
+  public void setSensorPosition(double position) {
+    awaitConfiguration();
+    sensor.setPosition(position);
+    positionCycle = -1;
+  }
+
+  /**
+   * The output applied by the motor controller, from -1 to 1 as a fraction of the bus voltage. Subclasses report the
+   * value measured by the device where it's available, otherwise this is the last value set on the raw controller.
+   */
+  public double appliedOutput() {
+    return internalController.get();
+  }
 }
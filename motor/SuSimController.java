@@ -0,0 +1,419 @@
+package frc.sorutil.motor;
+
+import java.util.logging.Logger;
+
+import edu.wpi.first.wpilibj.motorcontrol.MotorController;
+import frc.sorutil.motor.SensorConfiguration.ExternalSensorSource;
+
+/**
+ * SuSimController is a motor controller with no hardware behind it, driving a simulated DC motor connected through a
+ * gearbox to a mechanism with a given moment of inertia. It allows code written against SuController to be run and
+ * tested without a robot.
+ *
+ * <p>
+ * Simulated time only advances when {@link #step(double)} is called, so tests can run as fast as the model can be
+ * evaluated rather than in real time. Each step runs in 1ms sub-steps, the rate of the closed loop on real motor
+ * controllers. The write rate limit and keep-alive are timed in simulated time too, so a setpoint held back by the rate
+ * limit is sent at the start of the first step() that the rate allows.
+ * </p>
+ *
+ * <p>
+ * The MotorConfiguration is honoured: inversion, max output, neutral deadband, idle mode, voltage compensation and the
+ * current limit (which limits stator current, if set). Unlike real controllers, the integrated closed loop works in
+ * output units, degrees for position and RPM for velocity, with the I and D gains per second.
+ * </p>
+ *
+ * <p>
+ * The gearing between the motor and the mechanism is taken from the outputOffset of the SensorConfiguration, assuming
+ * that the sensor is on the motor shaft. Without a SensorConfiguration the motor drives the mechanism directly. With
+ * an ExternalSensorSource, soft PID reads the provided sensor, which it's up to the caller to simulate.
+ * </p>
+ *
+ * <p>
+ * Not thread safe, except for soft PID running on a SoftPidLoop.
+ * </p>
+ */
+public class SuSimController extends SuController {
+  private static final double SUB_STEP = 0.001;
+
+  private final SimMotor motor;
+  private final double inertia;
+  private final SimOutput output;
+
+  private double gearing = 1;
+  private double busVoltage = 12;
+  private double damping;
+  private double loadTorque;
+
+  private ControlMode mode = ControlMode.PERCENT_OUTPUT;
+  private double setpoint;
+  private double integral;
+  private double lastError;
+  private SuSimController leader;
+
+  // Mechanism state, in the physical direction, i.e. not affected by inversion.
+  private double position;
+  private double velocity;
+  private double current;
+  private double appliedVoltage;
+  private double duty;
+  private double time;
+
+  // Subtracted from the position reported by the sensor, see setSensorPosition().
+  private double sensorOffset;
+
+  /**
+   * @param name       name of the controller, used for logging
+   * @param motor      the motor being simulated
+   * @param inertia    the moment of inertia of the mechanism, at its output, in kg m^2
+   * @param config     the motor configuration
+   * @param sensorConfig the sensor configuration, or null
+   */
+  public SuSimController(String name, SimMotor motor, double inertia, MotorConfiguration config,
+      SensorConfiguration sensorConfig) {
+    this(new SimOutput(), name, motor, inertia, config, sensorConfig);
+  }
+
+  private SuSimController(SimOutput output, String name, SimMotor motor, double inertia, MotorConfiguration config,
+      SensorConfiguration sensorConfig) {
+    super(output, config, sensorConfig, Logger.getLogger(String.format("Sim(%s)", name)));
+    if (!(inertia > 0)) {
+      throw new IllegalArgumentException("inertia must be positive, got: " + inertia);
+    }
+
+    this.output = output;
+    this.motor = motor;
+    this.inertia = inertia;
+    startConfiguration();
+  }
+
+  @Override
+  protected void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
+    if (sensorConfig == null) {
+      return;
+    }
+
+    if (sensorConfig.source() instanceof ExternalSensorSource) {
+      configureSoftPid();
+      return;
+    }
+
+    double outputOffset;
+    if (sensorConfig.source() instanceof SensorConfiguration.IntegratedSensorSource) {
+      outputOffset = ((SensorConfiguration.IntegratedSensorSource) sensorConfig.source()).outputOffset;
+    } else if (sensorConfig.source() instanceof SensorConfiguration.ConnectedSensorSource) {
+      outputOffset = ((SensorConfiguration.ConnectedSensorSource) sensorConfig.source()).outputOffset;
+    } else {
+      throw new MotorConfigurationError(
+          "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    }
+    SensorStrategy.checkOffset(outputOffset);
+    gearing = outputOffset;
+    sensor = new SimSensor();
+  }
+
+  /**
+   * Sets the voltage supplied to the controller. Defaults to 12V.
+   */
+  public void setBusVoltage(double volts) {
+    this.busVoltage = volts;
+  }
+
+  /**
+   * Sets viscous friction at the mechanism, in Nm per rad/s. Defaults to 0.
+   */
+  public void setDamping(double damping) {
+    this.damping = damping;
+  }
+
+  /**
+   * Sets a constant external torque on the mechanism, in Nm, for example from gravity or a spring. Defaults to 0.
+   */
+  public void setLoadTorque(double torque) {
+    this.loadTorque = torque;
+  }
+
+  /**
+   * Advances the simulation by the given time. A setpoint held back by the write rate limit is sent, and soft PID, if it
+   * doesn't run on a SoftPidLoop, runs once, at the start of each step, as they would once per cycle on a robot. A
+   * follower must be stepped after its leader.
+   *
+   * @param seconds the time to advance by
+   */
+  public void step(double seconds) {
+    flushPendingWrite();
+    tickSoftPid();
+
+    // Equal sub-steps, so that there's never a tiny one left over to upset the derivative term.
+    int count = (int) Math.ceil(seconds / SUB_STEP - 1e-9);
+    for (int i = 0; i < count; i++) {
+      subStep(seconds / count);
+    }
+  }
+
+  private void subStep(double dt) {
+    double demand = demand(dt);
+    if (config.inverted()) {
+      demand = -demand;
+    }
+    double max = config.maxOutput();
+    demand = Math.max(-max, Math.min(max, demand));
+
+    Double neutralDeadband = config.neutralDeadband();
+    boolean neutral = neutralDeadband != null && Math.abs(demand) < neutralDeadband;
+    duty = neutral ? 0 : demand;
+
+    double ratio = gearing;
+    // The acceleration of the mechanism is a - b * velocity, see below.
+    double a;
+    double b;
+    if (neutral && config.idleMode() == IdleMode.COAST) {
+      // Open circuit, so no current flows.
+      appliedVoltage = 0;
+      current = 0;
+      a = loadTorque / inertia;
+      b = damping / inertia;
+    } else {
+      appliedVoltage = duty * supply();
+
+      double motorVelocity = velocity * ratio;
+      current = (appliedVoltage - motorVelocity / motor.velocityConstant) / motor.resistance;
+      Double limit = config.currentLimit();
+      if (limit != null && Math.abs(current) > limit) {
+        current = Math.copySign(limit, current);
+        a = (ratio * motor.torqueConstant * current + loadTorque) / inertia;
+        b = damping / inertia;
+      } else {
+        // torque = ratio * kt * (V - ratio * w / kv) / R, so back-EMF acts as damping proportional to ratio^2.
+        a = (ratio * motor.torqueConstant * appliedVoltage / motor.resistance + loadTorque) / inertia;
+        b = (ratio * ratio * motor.torqueConstant / (motor.resistance * motor.velocityConstant) + damping) / inertia;
+      }
+    }
+
+    // Integrate exactly rather than with Euler, since back-EMF damping through a large reduction makes the system stiff.
+    if (b > 0) {
+      double steady = a / b;
+      double decay = Math.exp(-b * dt);
+      position += steady * dt + (velocity - steady) * (1 - decay) / b;
+      velocity = steady + (velocity - steady) * decay;
+    } else {
+      position += velocity * dt + a * dt * dt / 2;
+      velocity += a * dt;
+    }
+    time += dt;
+  }
+
+  /**
+   * The voltage that full output corresponds to.
+   */
+  private double supply() {
+    if (config.voltageCompenstationEnabled()) {
+      return Math.min(busVoltage, SuController.DEFAULT_VOLTAGE_COMPENSTAION);
+    }
+    return busVoltage;
+  }
+
+  /**
+   * The output demanded by the current control mode, from -1 to 1, before inversion.
+   */
+  private double demand(double dt) {
+    if (leader != null) {
+      return leader.duty * (leader.config.inverted() ? -1 : 1);
+    }
+    if (softPidControllerEnabled) {
+      return output.value;
+    }
+
+    double measured;
+    switch (mode) {
+      case PERCENT_OUTPUT:
+        return setpoint;
+      case VOLTAGE:
+        return setpoint / supply();
+      case POSITION:
+        measured = sensor.position();
+        break;
+      case VELOCITY:
+        measured = sensor.velocity();
+        break;
+      default:
+        return 0;
+    }
+
+    PidProfile pid = config.pidProfile();
+    double error = setpoint - measured;
+    integral += error * dt;
+    double derivative = (error - lastError) / dt;
+    lastError = error;
+    return pid.p() * error + pid.i() * integral + pid.d() * derivative + pid.f() * setpoint;
+  }
+
+  @Override
+  public MotorController rawController() {
+    return output;
+  }
+
+  @Override
+  protected long writeClock() {
+    return Math.round(time * 1e9);
+  }
+
+  @Override
+  public void tick() {}
+
+  @Override
+  protected void setOutput(ControlMode mode, double setpoint) {
+    disableSoftPid();
+    leader = null;
+
+    if (mode == ControlMode.POSITION || mode == ControlMode.VELOCITY) {
+      if (sensor.soft()) {
+        // Soft PID drives the output, and if it's disabled from the loop thread the motor is left stopped.
+        this.mode = ControlMode.PERCENT_OUTPUT;
+        this.setpoint = 0;
+        setSoftPid(mode == ControlMode.VELOCITY, setpoint);
+        return;
+      }
+      // Fails with a description of the problem when there's no sensor.
+      if (mode == ControlMode.POSITION) {
+        sensor.toNativePosition(setpoint);
+      } else {
+        sensor.toNativeVelocity(setpoint);
+      }
+    }
+
+    if (mode != this.mode) {
+      integral = 0;
+      lastError = 0;
+    }
+    this.mode = mode;
+    this.setpoint = setpoint;
+  }
+
+  @Override
+  protected void stopOutput() {
+    leader = null;
+    mode = ControlMode.PERCENT_OUTPUT;
+    setpoint = 0;
+  }
+
+  @Override
+  protected void followOutput(SuController other) {
+    if (!(other instanceof SuSimController)) {
+      throw new MotorConfigurationError("simulated motor controllers can only follow other simulated controllers");
+    }
+    leader = (SuSimController) other;
+  }
+
+  @Override
+  public double appliedOutput() {
+    return duty * (config.inverted() ? -1 : 1);
+  }
+
+  /**
+   * The position of the mechanism in degrees, in its physical direction, regardless of inversion or sensor offsets.
+   */
+  public double simPosition() {
+    return Math.toDegrees(position);
+  }
+
+  /**
+   * The velocity of the mechanism in RPM, in its physical direction.
+   */
+  public double simVelocity() {
+    return velocity * 60 / (2 * Math.PI);
+  }
+
+  /**
+   * The motor's stator current in amps during the last sub-step.
+   */
+  public double simCurrent() {
+    return current;
+  }
+
+  /**
+   * The voltage applied to the motor during the last sub-step.
+   */
+  public double simVoltage() {
+    return appliedVoltage;
+  }
+
+  /**
+   * The total simulated time, in seconds.
+   */
+  public double simTime() {
+    return time;
+  }
+
+  /**
+   * Holds the output set by soft PID.
+   */
+  private static class SimOutput implements MotorController {
+    private volatile double value;
+    private boolean inverted;
+
+    @Override
+    public void set(double speed) {
+      value = speed;
+    }
+
+    @Override
+    public double get() {
+      return value;
+    }
+
+    @Override
+    public void setInverted(boolean isInverted) {
+      inverted = isInverted;
+    }
+
+    @Override
+    public boolean getInverted() {
+      return inverted;
+    }
+
+    @Override
+    public void disable() {
+      value = 0;
+    }
+
+    @Override
+    public void stopMotor() {
+      value = 0;
+    }
+  }
+
+  /**
+   * The simulated sensor on the motor shaft, which like the integrated sensor of a real controller follows inversion.
+   */
+  private class SimSensor extends SensorStrategy {
+    private double direction() {
+      return config.inverted() ? -1 : 1;
+    }
+
+    @Override
+    public double position() {
+      return Math.toDegrees(position) * direction() - sensorOffset;
+    }
+
+    @Override
+    public double velocity() {
+      return velocity * 60 / (2 * Math.PI) * direction();
+    }
+
+    @Override
+    public double toNativePosition(double degrees) {
+      return degrees;
+    }
+
+    @Override
+    public double toNativeVelocity(double rpm) {
+      return rpm;
+    }
+
+    @Override
+    public void setPosition(double degrees) {
+      sensorOffset = Math.toDegrees(position) * direction() - degrees;
+    }
+  }
+}
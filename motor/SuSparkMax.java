@@ -3,121 +3,186 @@ package frc.sorutil.motor;
 import java.util.logging.Logger;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.MotorFeedbackSensor;
-import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkMaxAbsoluteEncoder;
+import com.revrobotics.SparkMaxPIDController;
 import com.revrobotics.CANSparkMax.ControlType;
+import com.revrobotics.CANSparkMax.FaultID;
+import com.revrobotics.CANSparkMax.PeriodicFrame;
 
 import edu.wpi.first.wpilibj.motorcontrol.MotorController;
 import frc.sorutil.Errors;
 import frc.sorutil.motor.SensorConfiguration.ConnectedSensorSource;
 import frc.sorutil.motor.SensorConfiguration.ExternalSensorSource;
 import frc.sorutil.motor.SensorConfiguration.IntegratedSensorSource;
+import frc.sorutil.motor.StatusFrameProfile.Frame;
 
 public class SuSparkMax extends SuController {
   private static final double STALL_LIMIT = 30;
   private static final double DEFAULT_CURRENT_LIMIT = 70;
   private static final double DEFAULT_NEUTRAL_DEADBAND = 0.04;
   private static final int ANALOG_SAMPLE_DEPTH = 16;
+  private static final double VOLTAGE_COMPENSATION = 12;
 
   private final CANSparkMax sparkMax;
 
-  private SuController.ControlMode lastMode;
-  private double lastSetpoint;
-  
-  // Privately store references to the connected sensor objects that Rev uses.
-  private SparkMaxAbsoluteEncoder analogSensor;
-  private RelativeEncoder digitalSensor;
-
   public SuSparkMax(CANSparkMax sparkMax, String name, MotorConfiguration motorConfig,
       SensorConfiguration sensorConfig) {
     super(sparkMax, motorConfig, sensorConfig,
         Logger.getLogger(String.format("SparkMAX(%d: %s)", sparkMax.getDeviceId(), name)));
 
     this.sparkMax = sparkMax;
+    startConfiguration();
   }
 
   @Override
   public void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
-    Errors.handleRev(sparkMax.restoreFactoryDefaults(), logger, "resetting motor config");
-
-    sparkMax.enableVoltageCompensation(12);
-    if (!config.voltageCompenstationEnabled()) {
-      sparkMax.disableVoltageCompensation();
-    }
-
-    sparkMax.setInverted(config.inverted());
-
-    Errors.handleRev(sparkMax.getPIDController().setP(config.pidProfile().p()), logger, "setting P constant");
-    Errors.handleRev(sparkMax.getPIDController().setI(config.pidProfile().i()), logger, "setting I constant");
-    Errors.handleRev(sparkMax.getPIDController().setD(config.pidProfile().d()), logger, "setting D constant");
-    Errors.handleRev(sparkMax.getPIDController().setFF(config.pidProfile().f()), logger, "setting F constant");
-
-    double limit = DEFAULT_CURRENT_LIMIT;
-    if (config.currentLimit() != null) {
-      limit = config.currentLimit();
-    }
-
-    Errors.handleRev(sparkMax.setSmartCurrentLimit((int) STALL_LIMIT, (int) limit), logger, "setting current limit");
-
-    CANSparkMax.IdleMode desiredMode = CANSparkMax.IdleMode.kCoast;
-    if (config.idleMode() == SuController.IdleMode.BRAKE) {
-      desiredMode = CANSparkMax.IdleMode.kBrake;
-    }
-    Errors.handleRev(sparkMax.setIdleMode(desiredMode), logger, "setting idle mode");
-
-    double neutralDeadband = DEFAULT_NEUTRAL_DEADBAND;
-    if (config.neutralDeadband() != null) {
-      neutralDeadband = config.neutralDeadband();
-    }
-
-    // TODO: this should be improved to support multiple PID controllers.
-    Errors.handleRev(sparkMax.getPIDController().setOutputRange(neutralDeadband, config.maxOutput()), logger,
-        "setting neutral deadband");
-
-
+    MotorFeedbackSensor feedback = null;
     if (sensorConfig != null) {
       if (sensorConfig.source() instanceof ConnectedSensorSource) {
         var connected = (ConnectedSensorSource)sensorConfig.source();
-        MotorFeedbackSensor sensor;
 
         switch(connected.type) {
           case QUAD_ENCODER:
             // fallthrough
           case MAG_ENCODER_RELATIVE:
             var alt = sparkMax.getAlternateEncoder(connected.countsPerRev);
-            digitalSensor = alt;
-            sensor = alt;
+            feedback = alt;
+            sensor = new SensorStrategy.RevRelative(alt, connected.outputOffset);
             break;
           case MAG_ENCODER_ABSOLUTE:
             // fallthrough
           case PWM_ENCODER:
             //var analog = sparkMax.getAnalog(Mode.kAbsolute);
             var analog = sparkMax.getAbsoluteEncoder(SparkMaxAbsoluteEncoder.Type.kDutyCycle);
-            analog.setAverageDepth(ANALOG_SAMPLE_DEPTH);
-            analogSensor = analog;
-            sensor = analog;
+            feedback = analog;
+            sensor = new SensorStrategy.RevAbsolute(analog, connected.outputOffset);
             break;
           default:
             throw new MotorConfigurationError("unknown encoder type: " + connected.type.toString());
         }
+      } else if (sensorConfig.source() instanceof ExternalSensorSource) {
+        configureSoftPid();
+      } else if (sensorConfig.source() instanceof IntegratedSensorSource) {
+        var integrated = (IntegratedSensorSource) sensorConfig.source();
+        feedback = sparkMax.getEncoder();
+        sensor = new SensorStrategy.RevRelative(sparkMax.getEncoder(), integrated.outputOffset);
+      } else {
+        throw new MotorConfigurationError(
+            "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+      }
+    }
 
-        Errors.handleRev(sensor.setInverted(connected.inverted()), logger, "setting inversion of connected sensor");
+    // Everything but the status frame periods is kept in flash, so there's nothing else to do if it's unchanged.
+    if (configurationChanged()) {
+      configureDevice(config, sensorConfig, feedback);
+    }
+    // The reset fault is set from power on, clear it so that tick() only sees resets from here on.
+    handleConfigError(sparkMax.clearFaults(), "clearing faults");
+    configureStatusFrames(config.statusFrameProfile());
+  }
 
-        Errors.handleRev(sparkMax.getPIDController().setFeedbackDevice(sensor), logger,
-            "setting feedback device to sensor device");
-      }
+  /**
+   * Writes the settings that the Spark MAX stores itself, and burns them to flash so that they persist across power
+   * cycles and brownouts.
+   *
+   * @param feedback the sensor to use for closed loop control, or null if there isn't one
+   */
+  private void configureDevice(MotorConfiguration config, SensorConfiguration sensorConfig,
+      MotorFeedbackSensor feedback) {
+    handleConfigError(sparkMax.restoreFactoryDefaults(), "resetting motor config");
+
+    sparkMax.enableVoltageCompensation(VOLTAGE_COMPENSATION);
+    if (!config.voltageCompenstationEnabled()) {
+      sparkMax.disableVoltageCompensation();
+    }
 
-      if (sensorConfig.source() instanceof ExternalSensorSource) {
-        configureSoftPid();
-      }
+    sparkMax.setInverted(config.inverted());
+
+    handleConfigError(sparkMax.getPIDController().setP(config.pidProfile().p()), "setting P constant");
+    handleConfigError(sparkMax.getPIDController().setI(config.pidProfile().i()), "setting I constant");
+    handleConfigError(sparkMax.getPIDController().setD(config.pidProfile().d()), "setting D constant");
+    handleConfigError(sparkMax.getPIDController().setFF(config.pidProfile().f()), "setting F constant");
 
-      if (sensorConfig.source() instanceof IntegratedSensorSource) {
-        Errors.handleRev(sparkMax.getPIDController().setFeedbackDevice(sparkMax.getEncoder()), logger,
-            "setting feedback device to integral device");
+    handleConfigError(sparkMax.setSmartCurrentLimit((int) STALL_LIMIT, (int) currentLimit()), "setting current limit");
+
+    CANSparkMax.IdleMode desiredMode = CANSparkMax.IdleMode.kCoast;
+    if (config.idleMode() == SuController.IdleMode.BRAKE) {
+      desiredMode = CANSparkMax.IdleMode.kBrake;
+    }
+    handleConfigError(sparkMax.setIdleMode(desiredMode), "setting idle mode");
+
+    // TODO: this should be improved to support multiple PID controllers.
+    handleConfigError(sparkMax.getPIDController().setOutputRange(neutralDeadband(), config.maxOutput()),
+        "setting neutral deadband");
+
+    if (feedback != null) {
+      if (sensorConfig.source() instanceof ConnectedSensorSource) {
+        var connected = (ConnectedSensorSource) sensorConfig.source();
+        if (feedback instanceof SparkMaxAbsoluteEncoder) {
+          handleConfigError(((SparkMaxAbsoluteEncoder) feedback).setAverageDepth(ANALOG_SAMPLE_DEPTH),
+              "setting sample depth of connected sensor");
+        }
+        handleConfigError(feedback.setInverted(connected.inverted()), "setting inversion of connected sensor");
       }
+      handleConfigError(sparkMax.getPIDController().setFeedbackDevice(feedback), "setting feedback device");
+    }
+
+    handleConfigError(sparkMax.burnFlash(), "saving settings to onboard Flash");
+  }
+
+  private double currentLimit() {
+    if (config.currentLimit() != null) {
+      return config.currentLimit();
     }
+    return DEFAULT_CURRENT_LIMIT;
+  }
+
+  private double neutralDeadband() {
+    if (config.neutralDeadband() != null) {
+      return config.neutralDeadband();
+    }
+    return DEFAULT_NEUTRAL_DEADBAND;
+  }
+
+  @Override
+  protected String deviceFingerprint() {
+    return String.format("limit=%s;stall=%s;deadband=%s;vc=%s;depth=%d", currentLimit(), STALL_LIMIT,
+        neutralDeadband(), VOLTAGE_COMPENSATION, ANALOG_SAMPLE_DEPTH);
+  }
+
+  /**
+   * The Spark MAX has nowhere to keep a marker, so a few settings are read back instead. The minimum output is always
+   * the neutral deadband, which a factory reset never leaves behind, and the gains and voltage compensation catch most
+   * settings changed by hand.
+   */
+  @Override
+  protected boolean deviceConfigured() {
+    SparkMaxPIDController pid = sparkMax.getPIDController();
+    double voltageCompensation = config.voltageCompenstationEnabled() ? VOLTAGE_COMPENSATION : 0;
+    // Settings are stored as floats.
+    return (float) pid.getOutputMin() == (float) neutralDeadband()
+        && (float) pid.getOutputMax() == (float) config.maxOutput()
+        && (float) pid.getP() == (float) config.pidProfile().p()
+        && (float) pid.getFF() == (float) config.pidProfile().f()
+        && (float) sparkMax.getVoltageCompensationNominalVoltage() == (float) voltageCompensation;
+  }
 
-    Errors.handleRev(sparkMax.burnFlash(), logger, "saving settings to onboard Flash");
+  private void configureStatusFrames(StatusFrameProfile profile) {
+    setStatusFrame(PeriodicFrame.kStatus0, profile.revPeriod(Frame.GENERAL));
+    setStatusFrame(PeriodicFrame.kStatus1, profile.revPeriod(Frame.VELOCITY, Frame.TELEMETRY));
+    setStatusFrame(PeriodicFrame.kStatus2, profile.revPeriod(Frame.POSITION));
+    setStatusFrame(PeriodicFrame.kStatus3, profile.revPeriod(Frame.CONNECTED_SENSOR));
+    setStatusFrame(PeriodicFrame.kStatus4, profile.revPeriod(Frame.CONNECTED_SENSOR));
+    setStatusFrame(PeriodicFrame.kStatus5, profile.revPeriod(Frame.CONNECTED_SENSOR));
+    setStatusFrame(PeriodicFrame.kStatus6, profile.revPeriod(Frame.CONNECTED_SENSOR));
+  }
+
+  private void setStatusFrame(PeriodicFrame frame, int period) {
+    if (period < 0) {
+      return;
+    }
+    Errors.handleRev(sparkMax.setPeriodicFramePeriod(frame, period), logger,
+        "setting period of status frame " + frame.name());
   }
 
   @Override
@@ -129,31 +194,19 @@ public class SuSparkMax extends SuController {
   public void tick() {
     Errors.handleRev(sparkMax.getLastError(), logger, "in motor loop, likely due to setting output");
 
-    if (softPidControllerEnabled) {
-      if (softPidControllerMode) {
-        // velocity mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-        double output = softPidController.calculate(current);
-        sparkMax.set(output);
-      } else {
-        // position mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-        double output = softPidController.calculate(current);
-        sparkMax.set(output);
-      }
+    if (sparkMax.getStickyFault(FaultID.kHasReset)) {
+      // Status frame periods are the only settings that aren't kept in flash, so they don't survive a reset.
+      logger.warning("motor controller reset, restoring status frame periods");
+      Errors.handleRev(sparkMax.clearFaults(), logger, "clearing faults after a reset");
+      configureStatusFrames(config.statusFrameProfile());
     }
+
+    tickSoftPid();
   }
 
   @Override
-  public void set(ControlMode mode, double setpoint) {
-    // Skip updating the motor if the setpoint is the same, this reduces
-    // unneccessary CAN messages.
-    if (setpoint == lastSetpoint && mode == lastMode) {
-      return;
-    }
-    lastSetpoint = setpoint;
-    lastMode = mode;
-    softPidControllerEnabled = false;
+  protected void setOutput(ControlMode mode, double setpoint) {
+    disableSoftPid();
 
     switch (mode) {
       case PERCENT_OUTPUT:
@@ -173,80 +226,30 @@ public class SuSparkMax extends SuController {
   }
 
   private void setPosition(double setpoint) {
-    // Using the integrated Neo source
-    if (sensorConfig.source() instanceof SensorConfiguration.IntegratedSensorSource) {
-      var integrated = (SensorConfiguration.IntegratedSensorSource) sensorConfig.source();
-      double motorDegrees = integrated.outputOffset * setpoint;
-      double revsToDegrees = 1 / 360.0;
-      double output = motorDegrees * revsToDegrees;
-
-      Errors.handleRev(sparkMax.getPIDController().setReference(output, ControlType.kPosition),
-          logger, "setting motor output");
-      return;
-    }
-    // Using sensor external to the SparkMAX.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = false;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-      double output = softPidController.calculate(current, setpoint);
-      sparkMax.set(output);
+    if (sensor.soft()) {
+      setSoftPid(false, setpoint);
       return;
     }
-    if (sensorConfig.source() instanceof SensorConfiguration.ConnectedSensorSource) {
-      var connected = (SensorConfiguration.ConnectedSensorSource) sensorConfig.source();
-      double motorDegrees = connected.outputOffset * setpoint;
-      double revsToDegrees = 1 / 360.0;
-      double output = motorDegrees * revsToDegrees;
-
-      Errors.handleRev(sparkMax.getPIDController().setReference(output, ControlType.kPosition),
-          logger, "setting motor output");
-      return;
-    }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    Errors.handleRev(sparkMax.getPIDController().setReference(sensor.toNativePosition(setpoint), ControlType.kPosition),
+        logger, "setting motor output");
   }
 
   private void setVelocity(double setpoint) {
-    // Using the integrated Neo source
-    if (sensorConfig.source() instanceof SensorConfiguration.IntegratedSensorSource) {
-      var integrated = (SensorConfiguration.IntegratedSensorSource) sensorConfig.source();
-      double output = integrated.outputOffset * setpoint;
-
-      Errors.handleRev(sparkMax.getPIDController().setReference(output, ControlType.kVelocity),
-          logger, "setting motor output");
+    if (sensor.soft()) {
+      setSoftPid(true, setpoint);
       return;
     }
-    // Using sensor external to the SparkMAX.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = true;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-      double output = softPidController.calculate(current, setpoint);
-      sparkMax.set(output);
-      return;
-    }
-    if (sensorConfig.source() instanceof SensorConfiguration.ConnectedSensorSource) {
-      var connected = (SensorConfiguration.ConnectedSensorSource) sensorConfig.source();
-      double output = connected.outputOffset * setpoint;
-
-      Errors.handleRev(sparkMax.getPIDController().setReference(output, ControlType.kVelocity),
-          logger, "setting motor output");
-      return;
-    }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    Errors.handleRev(sparkMax.getPIDController().setReference(sensor.toNativeVelocity(setpoint), ControlType.kVelocity),
+        logger, "setting motor output");
   }
 
   @Override
-  public void stop() {
+  protected void stopOutput() {
     sparkMax.stopMotor();
   }
 
   @Override
-  public void follow(SuController other) {
+  protected void followOutput(SuController other) {
     // Techincally, the spark max can follow other motor controllers, but for now we
     // will only allow the following of other
     // SparkMaxes for safety.
@@ -261,77 +264,7 @@ public class SuSparkMax extends SuController {
   }
 
   @Override
-  public double outputPosition() {
-    if (sensorConfig.source() instanceof IntegratedSensorSource) {
-      return sparkMax.getEncoder().getPosition() * 360.0;
-    }
-    if (sensorConfig.source() instanceof ConnectedSensorSource) {
-      var type = ((ConnectedSensorSource) sensorConfig.source()).type;
-      switch (type) {
-        case QUAD_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_RELATIVE:
-          return digitalSensor.getPosition() * 360.0;
-        case PWM_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_ABSOLUTE:
-          return analogSensor.getPosition() * 360.0;
-        default:
-          throw new MotorConfigurationError("unknown sensor type: " + type.toString());
-      }
-    }
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-    }
-    return 0;
-  }
-
-  @Override
-  public double outputVelocity() {
-    if (sensorConfig.source() instanceof IntegratedSensorSource) {
-      return sparkMax.getEncoder().getVelocity();
-    }
-    if (sensorConfig.source() instanceof ConnectedSensorSource) {
-      var type = ((ConnectedSensorSource) sensorConfig.source()).type;
-      switch (type) {
-        case QUAD_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_RELATIVE:
-          return digitalSensor.getVelocity();
-        case PWM_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_ABSOLUTE:
-          return analogSensor.getVelocity();
-        default:
-          throw new MotorConfigurationError("unknown sensor type: " + type.toString());
-      }
-    }
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-    }
-    return 0;
-  }
-
-  @Override
-  public void setSensorPosition(double position) {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      ((ExternalSensorSource) sensorConfig.source()).sensor.setPosition(position);
-    }
-    if (sensorConfig.source() instanceof ConnectedSensorSource) {
-      var type = ((ConnectedSensorSource) sensorConfig.source()).type;
-      switch (type) {
-        case QUAD_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_RELATIVE:
-          digitalSensor.setPosition(position / 360.0);
-          break;
-        case PWM_ENCODER:
-          // fallthrough
-        case MAG_ENCODER_ABSOLUTE:
-          throw new MotorConfigurationError("can't override the position of an absolute sensor");
-        default:
-          throw new MotorConfigurationError("unknown sensor type: " + type.toString());
-      }
-    }
+  public double appliedOutput() {
+    return sparkMax.getAppliedOutput();
   }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.IFollower;
 import com.ctre.phoenix.motorcontrol.IMotorController;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.StatorCurrentLimitConfiguration;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 
@@ -14,88 +15,147 @@ import frc.sorutil.Errors;
 import frc.sorutil.motor.SensorConfiguration.ConnectedSensorSource;
 import frc.sorutil.motor.SensorConfiguration.ExternalSensorSource;
 import frc.sorutil.motor.SensorConfiguration.IntegratedSensorSource;
+import frc.sorutil.motor.StatusFrameProfile.Frame;
 
 public class SuTalonFx extends SuController {
   private static final double DEFAULT_CURRENT_LIMIT = 80;
   private static final double DEFAULT_NEUTRAL_DEADBAND = 0.04;
+  // The custom parameter that holds configurationMarker(). Like every other setting, it's cleared by a factory reset.
+  private static final int CONFIGURATION_MARKER_PARAM = 0;
   private static final double COUNTS_PER_REVOLUTION_INTEGRATED = 2048;
 
   private final WPI_TalonFX talon;
-  private MotorConfiguration config;
 
   private boolean voltageControlOverrideSet = false;
   private Double lastVoltageCompensation = null;
 
-  private SuController.ControlMode lastMode;
-  private double lastSetpoint;
-
-  private SensorConfiguration sensorConfig;
-
   public SuTalonFx(WPI_TalonFX talon, String name, MotorConfiguration motorConfig, SensorConfiguration sensorConfig) {
     super(talon, motorConfig, sensorConfig,
         Logger.getLogger(String.format("TalonFX(%d: %s)", talon.getDeviceID(), name)));
 
     this.talon = talon;
+    startConfiguration();
   }
 
   @Override
   public void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
+    if (sensorConfig != null) {
+      if (sensorConfig.source() instanceof ConnectedSensorSource) {
+        throw new MotorConfigurationError(
+            "Talon FX does not supported directly connected sensors, but was configured to use one.");
+      }
+
+      if (sensorConfig.source() instanceof IntegratedSensorSource) {
+        var integrated = (IntegratedSensorSource) sensorConfig.source();
+        sensor = new SensorStrategy.Ctre(talon, COUNTS_PER_REVOLUTION_INTEGRATED, integrated.outputOffset, null);
+      } else if (sensorConfig.source() instanceof ExternalSensorSource) {
+        configureSoftPid();
+      } else {
+        throw new MotorConfigurationError(
+            "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+      }
+    }
+
     Errors.handleCtre(talon.clearMotionProfileHasUnderrun(), logger, "clearing motion profile");
     Errors.handleCtre(talon.clearMotionProfileTrajectories(), logger, "clearing motion profile trajectories");
 
     Errors.handleCtre(talon.clearStickyFaults(), logger, "clearing sticky faults");
 
-    Errors.handleCtre(talon.configFactoryDefault(), logger, "resetting motor config");
+    if (configurationChanged()) {
+      configureDevice(config, sensorConfig);
+    }
+    configureStatusFrames(config.statusFrameProfile());
 
     talon.setInverted(config.inverted());
+    talon.enableVoltageCompensation(config.voltageCompenstationEnabled());
 
-    Errors.handleCtre(talon.config_kP(0, config.pidProfile().p()), logger, "setting P constant");
-    Errors.handleCtre(talon.config_kI(0, config.pidProfile().i()), logger, "setting I constant");
-    Errors.handleCtre(talon.config_kD(0, config.pidProfile().d()), logger, "setting D constant");
-    Errors.handleCtre(talon.config_kF(0, config.pidProfile().f()), logger, "setting F constant");
-
-    double limit = DEFAULT_CURRENT_LIMIT;
-    if (config.currentLimit() != null) {
-      limit = config.currentLimit();
+    NeutralMode desiredMode = NeutralMode.Coast;
+    if (config.idleMode() == IdleMode.BRAKE) {
+      desiredMode = NeutralMode.Brake;
     }
+    talon.setNeutralMode(desiredMode);
+
+    // The reset flag is set from power on, read it once so that tick() only sees resets from here on.
+    talon.hasResetOccurred();
+  }
 
+  /**
+   * Writes the settings that the Talon stores itself, which persist across power cycles.
+   */
+  private void configureDevice(MotorConfiguration config, SensorConfiguration sensorConfig) {
+    handleConfigError(talon.configFactoryDefault(), "resetting motor config");
+
+    handleConfigError(talon.config_kP(0, config.pidProfile().p()), "setting P constant");
+    handleConfigError(talon.config_kI(0, config.pidProfile().i()), "setting I constant");
+    handleConfigError(talon.config_kD(0, config.pidProfile().d()), "setting D constant");
+    handleConfigError(talon.config_kF(0, config.pidProfile().f()), "setting F constant");
+
+    double limit = currentLimit();
     StatorCurrentLimitConfiguration limitConfig = new StatorCurrentLimitConfiguration();
     limitConfig.currentLimit = limit;
     limitConfig.triggerThresholdCurrent = limit;
 
-    Errors.handleCtre(talon.configStatorCurrentLimit(limitConfig), logger, "setting current limit");
-    restoreDefaultVoltageCompensation();
+    handleConfigError(talon.configStatorCurrentLimit(limitConfig), "setting current limit");
+    handleConfigError(talon.configVoltageCompSaturation(SuController.DEFAULT_VOLTAGE_COMPENSTAION),
+        "configuring voltage compenstation");
 
-    NeutralMode desiredMode = NeutralMode.Coast;
-    if (config.idleMode() == IdleMode.BRAKE) {
-      desiredMode = NeutralMode.Brake;
+    handleConfigError(talon.configNeutralDeadband(neutralDeadband()), "setting neutral deadband");
+
+    handleConfigError(talon.configPeakOutputForward(config.maxOutput()), "configuring max output");
+    handleConfigError(talon.configPeakOutputReverse(-config.maxOutput()), "configuring max output");
+
+    if (sensorConfig != null && sensorConfig.source() instanceof IntegratedSensorSource) {
+      handleConfigError(talon.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor),
+          "configuring sensor to integrated feedback sensor");
     }
-    talon.setNeutralMode(desiredMode);
 
-    double neutralDeadband = DEFAULT_NEUTRAL_DEADBAND;
+    // Checked by deviceConfigured() the next time the configuration is unchanged.
+    handleConfigError(talon.configSetCustomParam(configurationMarker(), CONFIGURATION_MARKER_PARAM),
+        "saving configuration marker");
+  }
+
+  private double currentLimit() {
+    if (config.currentLimit() != null) {
+      return config.currentLimit();
+    }
+    return DEFAULT_CURRENT_LIMIT;
+  }
+
+  private double neutralDeadband() {
     if (config.neutralDeadband() != null) {
-      neutralDeadband = config.neutralDeadband();
+      return config.neutralDeadband();
     }
-    Errors.handleCtre(talon.configNeutralDeadband(neutralDeadband), logger, "setting neutral deadband");
+    return DEFAULT_NEUTRAL_DEADBAND;
+  }
 
-    Errors.handleCtre(talon.configPeakOutputForward(config.maxOutput()), logger, "configuring max output");
-    Errors.handleCtre(talon.configPeakOutputReverse(-config.maxOutput()), logger, "configuring max output");
+  @Override
+  protected String deviceFingerprint() {
+    return String.format("limit=%s;deadband=%s;vc=%s", currentLimit(), neutralDeadband(),
+        SuController.DEFAULT_VOLTAGE_COMPENSTAION);
+  }
 
-    if (sensorConfig != null) {
-      if (sensorConfig.source() instanceof ConnectedSensorSource) {
-        throw new MotorConfigurationError(
-            "Talon FX does not supported directly connected sensors, but was configured to use one.");
-      }
+  @Override
+  protected boolean deviceConfigured() {
+    return talon.configGetCustomParam(CONFIGURATION_MARKER_PARAM) == configurationMarker();
+  }
 
-      if (sensorConfig.source() instanceof IntegratedSensorSource) {
-        Errors.handleCtre(talon.configSelectedFeedbackSensor(FeedbackDevice.IntegratedSensor), logger,
-            "configuring sensor to integrated feedback sensor");
-      }
+  private void configureStatusFrames(StatusFrameProfile profile) {
+    setStatusFrame(StatusFrameEnhanced.Status_1_General, profile.ctrePeriod(Frame.GENERAL));
+    setStatusFrame(StatusFrameEnhanced.Status_2_Feedback0, profile.ctrePeriod(Frame.POSITION, Frame.VELOCITY));
+    setStatusFrame(StatusFrameEnhanced.Status_21_FeedbackIntegrated,
+        profile.ctrePeriod(Frame.POSITION, Frame.VELOCITY));
+    setStatusFrame(StatusFrameEnhanced.Status_4_AinTempVbat, profile.ctrePeriod(Frame.TELEMETRY));
+    setStatusFrame(StatusFrameEnhanced.Status_Brushless_Current, profile.ctrePeriod(Frame.TELEMETRY));
+    setStatusFrame(StatusFrameEnhanced.Status_10_Targets, profile.ctrePeriod(Frame.CLOSED_LOOP));
+    setStatusFrame(StatusFrameEnhanced.Status_13_Base_PIDF0, profile.ctrePeriod(Frame.CLOSED_LOOP));
+  }
 
-      if (sensorConfig.source() instanceof ExternalSensorSource) {
-        configureSoftPid();
-      }
+  private void setStatusFrame(StatusFrameEnhanced frame, int period) {
+    if (period < 0) {
+      return;
     }
+    Errors.handleCtre(talon.setStatusFramePeriod(frame, period), logger,
+        "setting period of status frame " + frame.name());
   }
 
   @Override
@@ -108,21 +168,12 @@ public class SuTalonFx extends SuController {
     Errors.handleCtre(talon.getLastError(), logger, "in motor loop, likely from setting a motor update");
 
     if (talon.hasResetOccurred()) {
-
+      // Status frame periods don't survive a reset of the controller.
+      logger.warning("motor controller reset, restoring status frame periods");
+      configureStatusFrames(config.statusFrameProfile());
     }
 
-    if (softPidControllerEnabled) {
-      double current = 0;
-      if (softPidControllerMode) {
-        // velocity mode
-        current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-      } else {
-        // position mode
-        current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-      }
-      double output = softPidController.calculate(current);
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-    }
+    tickSoftPid();
   }
 
   private void restoreDefaultVoltageCompensation() {
@@ -132,21 +183,14 @@ public class SuTalonFx extends SuController {
   }
 
   @Override
-  public void set(SuController.ControlMode mode, double setpoint) {
+  protected void setOutput(SuController.ControlMode mode, double setpoint) {
     if (voltageControlOverrideSet && mode != SuController.ControlMode.VOLTAGE) {
       restoreDefaultVoltageCompensation();
       voltageControlOverrideSet = false;
       lastVoltageCompensation = null;
     }
 
-    // Skip updating the motor if the setpoint is the same, this reduces
-    // unneccessary CAN messages.
-    if (setpoint == lastSetpoint && mode == lastMode) {
-      return;
-    }
-    lastSetpoint = setpoint;
-    lastMode = mode;
-    softPidControllerEnabled = false;
+    disableSoftPid();
 
     switch (mode) {
       case PERCENT_OUTPUT:
@@ -176,62 +220,28 @@ public class SuTalonFx extends SuController {
   }
 
   private void setPosition(double setpoint) {
-    // Using the integrated Falcon source
-    if (sensorConfig.source() instanceof SensorConfiguration.IntegratedSensorSource) {
-      var integrated = (SensorConfiguration.IntegratedSensorSource) sensorConfig.source();
-      double motorDegrees = integrated.outputOffset * setpoint;
-      double countsToDegrees = COUNTS_PER_REVOLUTION_INTEGRATED / 360.0;
-      double output = motorDegrees * countsToDegrees;
-
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Position, output);
-      return;
-    }
-    // Using sensor external to the Falcon.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = false;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-      double output = softPidController.calculate(current, setpoint);
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
+    if (sensor.soft()) {
+      setSoftPid(false, setpoint);
       return;
     }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Position, sensor.toNativePosition(setpoint));
   }
 
   private void setVelocity(double setpoint) {
-    // Using the integrated Falcon source
-    if (sensorConfig.source() instanceof SensorConfiguration.IntegratedSensorSource) {
-      var integrated = (SensorConfiguration.IntegratedSensorSource) sensorConfig.source();
-      double motorRpm = integrated.outputOffset * setpoint;
-      double motorRps = motorRpm / 60.0;
-      double output = (COUNTS_PER_REVOLUTION_INTEGRATED * motorRps) / 10.0;
-
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Velocity, output);
+    if (sensor.soft()) {
+      setSoftPid(true, setpoint);
       return;
     }
-    // Using sensor external to the Falcon.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = true;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-      double output = softPidController.calculate(current, setpoint);
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-      return;
-    }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Velocity, sensor.toNativeVelocity(setpoint));
   }
 
   @Override
-  public void stop() {
+  protected void stopOutput() {
     talon.stopMotor();
   }
 
   @Override
-  public void follow(SuController other) {
+  protected void followOutput(SuController other) {
     if (!(other.rawController() instanceof IFollower)) {
       throw new MotorConfigurationError(
           "CTRE motor controllers can only follow other motor controllers from CTRE");
@@ -241,35 +251,7 @@ public class SuTalonFx extends SuController {
   }
 
   @Override
-  public double outputPosition() {
-    if (sensorConfig.source() instanceof IntegratedSensorSource) {
-      return talon.getSelectedSensorPosition() / (COUNTS_PER_REVOLUTION_INTEGRATED * 360.0);
-    }
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-    }
-    return 0;
-  }
-
-  @Override
-  public double outputVelocity() {
-    if (sensorConfig.source() instanceof IntegratedSensorSource) {
-      return talon.getSelectedSensorVelocity() * 10.0 * 60.0 / COUNTS_PER_REVOLUTION_INTEGRATED;
-    }
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-    }
-    return 0;
-  }
-
-  @Override
-  public void setSensorPosition(double position) {
-    if (sensorConfig.source() instanceof IntegratedSensorSource) {
-      // TODO: this isn't quite right. It should be actually modifying this better.
-      talon.configIntegratedSensorOffset(position % 360);
-    }
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      ((ExternalSensorSource) sensorConfig.source()).sensor.setPosition(position);
-    }
+  public double appliedOutput() {
+    return talon.getMotorOutputPercent();
   }
 }
@@ -5,6 +5,7 @@ import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.IFollower;
 import com.ctre.phoenix.motorcontrol.IMotorController;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.SupplyCurrentLimitConfiguration;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 import edu.wpi.first.wpilibj.motorcontrol.MotorController;
@@ -12,68 +13,29 @@ import frc.sorutil.Errors;
 import frc.sorutil.motor.SensorConfiguration.ConnectedSensorSource;
 import frc.sorutil.motor.SensorConfiguration.ExternalSensorSource;
 import frc.sorutil.motor.SensorConfiguration.IntegratedSensorSource;
+import frc.sorutil.motor.StatusFrameProfile.Frame;
 
 public class SuTalonSrx extends SuController {
   private static final double DEFAULT_CURRENT_LIMIT = 60;
   private static final double DEFAULT_NEUTRAL_DEADBAND = 0.04;
+  // The custom parameter that holds configurationMarker(). Like every other setting, it's cleared by a factory reset.
+  private static final int CONFIGURATION_MARKER_PARAM = 0;
 
   private final WPI_TalonSRX talon;
-  private MotorConfiguration config;
 
   private boolean voltageControlOverrideSet = false;
   private Double lastVoltageCompensation = null;
 
-  private SuController.ControlMode lastMode;
-  private double lastSetpoint;
-
   public SuTalonSrx(WPI_TalonSRX talon, String name, MotorConfiguration motorConfig, SensorConfiguration sensorConfig) {
     super(talon, motorConfig, sensorConfig, Logger.getLogger(String.format("TalonSRX(%d: %s)", talon.getDeviceID(), name)));
 
     this.talon = talon;
+    startConfiguration();
   }
 
   @Override
   public void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
-    Errors.handleCtre(talon.clearMotionProfileHasUnderrun(), logger, "clearing motion profile");
-    Errors.handleCtre(talon.clearMotionProfileTrajectories(), logger, "clearing motion profile trajectories");
-
-    Errors.handleCtre(talon.configFactoryDefault(), logger, "resetting motor config");
-
-    talon.setInverted(config.inverted());
-
-    Errors.handleCtre(talon.config_kP(0, config.pidProfile().p()), logger, "setting P constant");
-    Errors.handleCtre(talon.config_kI(0, config.pidProfile().i()), logger, "setting I constant");
-    Errors.handleCtre(talon.config_kD(0, config.pidProfile().d()), logger, "setting D constant");
-    Errors.handleCtre(talon.config_kF(0, config.pidProfile().f()), logger, "setting F constant");
-
-    double limit = DEFAULT_CURRENT_LIMIT;
-    if (config.currentLimit() != null) {
-      limit = config.currentLimit();
-    }
-
-    SupplyCurrentLimitConfiguration limitConfig = new SupplyCurrentLimitConfiguration();
-    limitConfig.currentLimit = limit;
-    limitConfig.triggerThresholdCurrent = limit;
-
-    Errors.handleCtre(talon.configSupplyCurrentLimit(limitConfig), logger, "setting current limit");
-
-    restoreDefaultVoltageCompensation();
-
-    NeutralMode desiredMode = NeutralMode.Coast;
-    if (config.idleMode() == IdleMode.BRAKE) {
-      desiredMode = NeutralMode.Brake;
-    }
-    talon.setNeutralMode(desiredMode);
-
-    double neutralDeadband = DEFAULT_NEUTRAL_DEADBAND;
-    if (config.neutralDeadband() != null){
-      neutralDeadband = config.neutralDeadband();
-    }
-    Errors.handleCtre(talon.configNeutralDeadband(neutralDeadband), logger, "setting neutral deadband");
-
-    Errors.handleCtre(talon.configPeakOutputForward(config.maxOutput()), logger, "configuring max output");
-    Errors.handleCtre(talon.configPeakOutputReverse(-config.maxOutput()), logger, "configuring max output");
-
+    FeedbackDevice device = null;
     if (sensorConfig != null) {
       if (sensorConfig.source() instanceof IntegratedSensorSource) {
         throw new MotorConfigurationError(
@@ -82,7 +44,6 @@ public class SuTalonSrx extends SuController {
 
       if (sensorConfig.source() instanceof ConnectedSensorSource) {
         var connectedSensor = ((ConnectedSensorSource) sensorConfig.source());
-        FeedbackDevice device = null;
         switch (connectedSensor.type) {
           case MAG_ENCODER_ABSOLUTE:
             device = FeedbackDevice.CTRE_MagEncoder_Absolute;
@@ -97,17 +58,124 @@ public class SuTalonSrx extends SuController {
             device = FeedbackDevice.QuadEncoder;
             break;
         }
-        Errors.handleCtre(talon.configSelectedFeedbackSensor(device), logger,
-            "configuring selected sensor");
-        if (connectedSensor.inverted()) {
-          talon.setSensorPhase(true);
+        if (device == FeedbackDevice.CTRE_MagEncoder_Absolute || device == FeedbackDevice.PulseWidthEncodedPosition) {
+          // Map the full range of the rotation to 0-1, assuming that the sensor can't over-rotate.
+          sensor = new SensorStrategy.Ctre(talon, 1, connectedSensor.outputOffset,
+              "cannot configure velocity setpoint mode while using an absolute sensor.");
+        } else {
+          sensor = new SensorStrategy.Ctre(talon, connectedSensor.countsPerRev, connectedSensor.outputOffset, null);
         }
-      }
-
-      if (sensorConfig.source() instanceof ExternalSensorSource) {
+      } else if (sensorConfig.source() instanceof ExternalSensorSource) {
         configureSoftPid();
+      } else {
+        throw new MotorConfigurationError(
+            "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
       }
     }
+
+    Errors.handleCtre(talon.clearMotionProfileHasUnderrun(), logger, "clearing motion profile");
+    Errors.handleCtre(talon.clearMotionProfileTrajectories(), logger, "clearing motion profile trajectories");
+
+    if (configurationChanged()) {
+      configureDevice(config, device);
+    }
+    configureStatusFrames(config.statusFrameProfile());
+
+    talon.setInverted(config.inverted());
+    talon.enableVoltageCompensation(config.voltageCompenstationEnabled());
+
+    NeutralMode desiredMode = NeutralMode.Coast;
+    if (config.idleMode() == IdleMode.BRAKE) {
+      desiredMode = NeutralMode.Brake;
+    }
+    talon.setNeutralMode(desiredMode);
+
+    if (device != null && ((ConnectedSensorSource) sensorConfig.source()).inverted()) {
+      talon.setSensorPhase(true);
+    }
+
+    // The reset flag is set from power on, read it once so that tick() only sees resets from here on.
+    talon.hasResetOccurred();
+  }
+
+  /**
+   * Writes the settings that the Talon stores itself, which persist across power cycles.
+   *
+   * @param device the connected sensor to select, or null if there isn't one
+   */
+  private void configureDevice(MotorConfiguration config, FeedbackDevice device) {
+    handleConfigError(talon.configFactoryDefault(), "resetting motor config");
+
+    handleConfigError(talon.config_kP(0, config.pidProfile().p()), "setting P constant");
+    handleConfigError(talon.config_kI(0, config.pidProfile().i()), "setting I constant");
+    handleConfigError(talon.config_kD(0, config.pidProfile().d()), "setting D constant");
+    handleConfigError(talon.config_kF(0, config.pidProfile().f()), "setting F constant");
+
+    double limit = currentLimit();
+    SupplyCurrentLimitConfiguration limitConfig = new SupplyCurrentLimitConfiguration();
+    limitConfig.currentLimit = limit;
+    limitConfig.triggerThresholdCurrent = limit;
+
+    handleConfigError(talon.configSupplyCurrentLimit(limitConfig), "setting current limit");
+    handleConfigError(talon.configVoltageCompSaturation(SuController.DEFAULT_VOLTAGE_COMPENSTAION),
+        "configuring voltage compenstation");
+
+    handleConfigError(talon.configNeutralDeadband(neutralDeadband()), "setting neutral deadband");
+
+    handleConfigError(talon.configPeakOutputForward(config.maxOutput()), "configuring max output");
+    handleConfigError(talon.configPeakOutputReverse(-config.maxOutput()), "configuring max output");
+
+    if (device != null) {
+      handleConfigError(talon.configSelectedFeedbackSensor(device), "configuring selected sensor");
+    }
+
+    // Checked by deviceConfigured() the next time the configuration is unchanged.
+    handleConfigError(talon.configSetCustomParam(configurationMarker(), CONFIGURATION_MARKER_PARAM),
+        "saving configuration marker");
+  }
+
+  private double currentLimit() {
+    if (config.currentLimit() != null) {
+      return config.currentLimit();
+    }
+    return DEFAULT_CURRENT_LIMIT;
+  }
+
+  private double neutralDeadband() {
+    if (config.neutralDeadband() != null) {
+      return config.neutralDeadband();
+    }
+    return DEFAULT_NEUTRAL_DEADBAND;
+  }
+
+  @Override
+  protected String deviceFingerprint() {
+    return String.format("limit=%s;deadband=%s;vc=%s", currentLimit(), neutralDeadband(),
+        SuController.DEFAULT_VOLTAGE_COMPENSTAION);
+  }
+
+  @Override
+  protected boolean deviceConfigured() {
+    return talon.configGetCustomParam(CONFIGURATION_MARKER_PARAM) == configurationMarker();
+  }
+
+  private void configureStatusFrames(StatusFrameProfile profile) {
+    setStatusFrame(StatusFrameEnhanced.Status_1_General, profile.ctrePeriod(Frame.GENERAL));
+    setStatusFrame(StatusFrameEnhanced.Status_2_Feedback0, profile.ctrePeriod(Frame.POSITION, Frame.VELOCITY));
+    setStatusFrame(StatusFrameEnhanced.Status_3_Quadrature, profile.ctrePeriod(Frame.CONNECTED_SENSOR));
+    setStatusFrame(StatusFrameEnhanced.Status_8_PulseWidth, profile.ctrePeriod(Frame.CONNECTED_SENSOR));
+    setStatusFrame(StatusFrameEnhanced.Status_4_AinTempVbat,
+        profile.ctrePeriod(Frame.CONNECTED_SENSOR, Frame.TELEMETRY));
+    setStatusFrame(StatusFrameEnhanced.Status_10_Targets, profile.ctrePeriod(Frame.CLOSED_LOOP));
+    setStatusFrame(StatusFrameEnhanced.Status_13_Base_PIDF0, profile.ctrePeriod(Frame.CLOSED_LOOP));
+  }
+
+  private void setStatusFrame(StatusFrameEnhanced frame, int period) {
+    if (period < 0) {
+      return;
+    }
+    Errors.handleCtre(talon.setStatusFramePeriod(frame, period), logger,
+        "setting period of status frame " + frame.name());
   }
 
   @Override
@@ -119,19 +187,13 @@ public class SuTalonSrx extends SuController {
   public void tick() {
     Errors.handleCtre(talon.getLastError(), logger, "in motor loop, likely from setting a motor update");
 
-    if (softPidControllerEnabled) {
-      if (softPidControllerMode) {
-        // velocity mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-        double output = softPidController.calculate(current);
-        talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-      } else {
-        // position mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-        double output = softPidController.calculate(current);
-        talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-      }
+    if (talon.hasResetOccurred()) {
+      // Status frame periods don't survive a reset of the controller.
+      logger.warning("motor controller reset, restoring status frame periods");
+      configureStatusFrames(config.statusFrameProfile());
     }
+
+    tickSoftPid();
   }
 
   private void restoreDefaultVoltageCompensation() {
@@ -141,20 +203,14 @@ public class SuTalonSrx extends SuController {
   }
 
   @Override
-  public void set(SuController.ControlMode mode, double setpoint) {
+  protected void setOutput(SuController.ControlMode mode, double setpoint) {
     if (voltageControlOverrideSet && mode != SuController.ControlMode.VOLTAGE) {
       restoreDefaultVoltageCompensation();
       voltageControlOverrideSet = false;
       lastVoltageCompensation = null;
     }
 
-    // Skip updating the motor if the setpoint is the same, this reduces unneccessary CAN messages.
-    if (setpoint == lastSetpoint && mode == lastMode) {
-      return;
-    }
-    lastSetpoint = setpoint;
-    lastMode = mode;
-    softPidControllerEnabled = false;
+    disableSoftPid();
 
     switch(mode) {
       case PERCENT_OUTPUT:
@@ -184,86 +240,28 @@ public class SuTalonSrx extends SuController {
   }
 
   private void setPosition(double setpoint) {
-    // Using sensor external to the Falcon.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = false;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-      double output = softPidController.calculate(current, setpoint);
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
+    if (sensor.soft()) {
+      setSoftPid(false, setpoint);
       return;
     }
-    if (sensorConfig.source() instanceof SensorConfiguration.ConnectedSensorSource) {
-      var connected = (SensorConfiguration.ConnectedSensorSource)sensorConfig.source();
-      if (connected.type == SensorConfiguration.ConnectedSensorType.QUAD_ENCODER
-          || connected.type == SensorConfiguration.ConnectedSensorType.MAG_ENCODER_RELATIVE) {
-        double sensorDegrees = connected.outputOffset * setpoint;
-        double countsToDegrees = connected.countsPerRev / 360.0;
-        double output = sensorDegrees*countsToDegrees;
-
-        talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Position, output);
-        return;
-      }
-      
-      if (connected.type == SensorConfiguration.ConnectedSensorType.PWM_ENCODER
-          || connected.type == SensorConfiguration.ConnectedSensorType.MAG_ENCODER_ABSOLUTE) {
-        double sensorDegrees = connected.outputOffset * setpoint;
-        // Map the full range of the rotation to 0-1, assuming that the sensor can't over-rotate.
-        double output = sensorDegrees/360.0;
-
-        talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Position, output);
-        return;
-      }
-      throw new MotorConfigurationError(
-          "unsupported type of connected sensor: " + sensorConfig.source().getClass().getName());
-    }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Position, sensor.toNativePosition(setpoint));
   }
 
   private void setVelocity(double setpoint) {
-    // Using sensor external to the Falcon.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = true;
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-      double output = softPidController.calculate(current, setpoint);
-      
-      talon.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
+    if (sensor.soft()) {
+      setSoftPid(true, setpoint);
       return;
     }
-    if (sensorConfig.source() instanceof SensorConfiguration.ConnectedSensorSource) {
-      var connected = (SensorConfiguration.ConnectedSensorSource) sensorConfig.source();
-      if (connected.type == SensorConfiguration.ConnectedSensorType.QUAD_ENCODER
-          || connected.type == SensorConfiguration.ConnectedSensorType.MAG_ENCODER_RELATIVE) {
-        double motorRpm = connected.outputOffset * setpoint;
-        double motorRps = motorRpm / 60.0;
-        double output = (connected.countsPerRev * motorRps) / 10.0;
-
-        talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Velocity, output);
-        return;
-      }
-
-      if (connected.type == SensorConfiguration.ConnectedSensorType.PWM_ENCODER
-          || connected.type == SensorConfiguration.ConnectedSensorType.MAG_ENCODER_ABSOLUTE) {
-        throw new MotorConfigurationError(
-            "cannot configure velocity setpoint mode while using an absolute sensor.");
-      }
-      throw new MotorConfigurationError(
-          "unsupported type of connected sensor: " + sensorConfig.source().getClass().getName());
-    }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    talon.set(com.ctre.phoenix.motorcontrol.ControlMode.Velocity, sensor.toNativeVelocity(setpoint));
   }
 
   @Override
-  public void stop() {
+  protected void stopOutput() {
     talon.stopMotor();
   }
 
   @Override
-  public void follow(SuController other) { 
+  protected void followOutput(SuController other) {
     if (!(other.rawController() instanceof IFollower)) {
       throw new MotorConfigurationError(
           "CTRE motor controllers can only follow other motor controllers from CTRE");
@@ -273,33 +271,7 @@ public class SuTalonSrx extends SuController {
   }
 
   @Override
-  public double outputPosition() {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-    }
-    if (sensorConfig.source() instanceof ConnectedSensorSource) {
-      var source = (ConnectedSensorSource) sensorConfig.source();
-      return talon.getSelectedSensorPosition() / (source.countsPerRev * 360.0);
-    }
-    return 0;
-  }
-
-  @Override
-  public double outputVelocity() {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-    }
-    if (sensorConfig.source() instanceof ConnectedSensorSource) {
-      var source = (ConnectedSensorSource) sensorConfig.source();
-      return talon.getSelectedSensorVelocity() * 10.0 * 60.0 / source.countsPerRev;
-    }
-    return 0;
-  }
-
-  @Override
-  public void setSensorPosition(double position) {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      ((ExternalSensorSource) sensorConfig.source()).sensor.setPosition(position);
-    }
+  public double appliedOutput() {
+    return talon.getMotorOutputPercent();
   }
 }
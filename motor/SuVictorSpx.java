@@ -4,48 +4,62 @@ import java.util.logging.Logger;
 import com.ctre.phoenix.motorcontrol.IFollower;
 import com.ctre.phoenix.motorcontrol.IMotorController;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.can.WPI_VictorSPX;
 import edu.wpi.first.wpilibj.motorcontrol.MotorController;
 import frc.sorutil.Errors;
 import frc.sorutil.motor.SensorConfiguration.ConnectedSensorSource;
 import frc.sorutil.motor.SensorConfiguration.ExternalSensorSource;
 import frc.sorutil.motor.SensorConfiguration.IntegratedSensorSource;
+import frc.sorutil.motor.StatusFrameProfile.Frame;
 
 public class SuVictorSpx extends SuController {
   private static final double DEFAULT_NEUTRAL_DEADBAND = 0.04;
+  // The custom parameter that holds configurationMarker(). Like every other setting, it's cleared by a factory reset.
+  private static final int CONFIGURATION_MARKER_PARAM = 0;
 
   private final WPI_VictorSPX victor;
 
   private boolean voltageControlOverrideSet = false;
   private Double lastVoltageCompensation = null;
 
-  private SuController.ControlMode lastMode;
-  private double lastSetpoint;
-
   public SuVictorSpx(WPI_VictorSPX victor, String name, MotorConfiguration motorConfig, SensorConfiguration sensorConfig) {
     super(victor, motorConfig, sensorConfig, Logger.getLogger(String.format("VictorSPX(%d: %s)", victor.getDeviceID(), name)));
 
     this.victor = victor;
+    startConfiguration();
   }
 
   @Override
   public void configure(MotorConfiguration config, SensorConfiguration sensorConfig) {
-    Errors.handleCtre(victor.configFactoryDefault(), logger, "resetting motor config");
-
-    victor.setInverted(config.inverted());
-
-    Errors.handleCtre(victor.config_kP(0, config.pidProfile().p()), logger, "setting P constant");
-    Errors.handleCtre(victor.config_kI(0, config.pidProfile().i()), logger, "setting I constant");
-    Errors.handleCtre(victor.config_kD(0, config.pidProfile().d()), logger, "setting D constant");
-    Errors.handleCtre(victor.config_kF(0, config.pidProfile().f()), logger, "setting F constant");
+    if (sensorConfig != null) {
+      if (sensorConfig.source() instanceof IntegratedSensorSource) {
+        throw new MotorConfigurationError(
+            "Victor SPX has no integrated sensor, but motor was configured to use integerated sensor source");
+      }
+      if (sensorConfig.source() instanceof ConnectedSensorSource) {
+        throw new MotorConfigurationError(
+            "Victor SPX does not supported directly connected sensors, but was configured to use one.");
+      }
+      if (sensorConfig.source() instanceof ExternalSensorSource) {
+        configureSoftPid();
+      } else {
+        throw new MotorConfigurationError(
+            "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+      }
+    }
 
     if (config.currentLimit() != null) {
       logger.warning(
           "Victor SPX initialized with current limit, current limits are NOT SUPPORTED, ignoring instruction.");
     }
 
-    Errors.handleCtre(victor.configVoltageCompSaturation(SuController.DEFAULT_VOLTAGE_COMPENSTAION),
-        logger, "configuring voltage compenstation");
+    if (configurationChanged()) {
+      configureDevice(config);
+    }
+    configureStatusFrames(config.statusFrameProfile());
+
+    victor.setInverted(config.inverted());
     victor.enableVoltageCompensation(config.voltageCompenstationEnabled());
 
     NeutralMode desiredMode = NeutralMode.Coast;
@@ -54,28 +68,65 @@ public class SuVictorSpx extends SuController {
     }
     victor.setNeutralMode(desiredMode);
 
-    double neutralDeadband = DEFAULT_NEUTRAL_DEADBAND;
-    if (config.neutralDeadband() != null){
-      neutralDeadband = config.neutralDeadband();
+    // The reset flag is set from power on, read it once so that tick() only sees resets from here on.
+    victor.hasResetOccurred();
+  }
+
+  /**
+   * Writes the settings that the Victor stores itself, which persist across power cycles.
+   */
+  private void configureDevice(MotorConfiguration config) {
+    handleConfigError(victor.configFactoryDefault(), "resetting motor config");
+
+    handleConfigError(victor.config_kP(0, config.pidProfile().p()), "setting P constant");
+    handleConfigError(victor.config_kI(0, config.pidProfile().i()), "setting I constant");
+    handleConfigError(victor.config_kD(0, config.pidProfile().d()), "setting D constant");
+    handleConfigError(victor.config_kF(0, config.pidProfile().f()), "setting F constant");
+
+    handleConfigError(victor.configVoltageCompSaturation(SuController.DEFAULT_VOLTAGE_COMPENSTAION),
+        "configuring voltage compenstation");
+
+    handleConfigError(victor.configNeutralDeadband(neutralDeadband()), "setting neutral deadband");
+
+    handleConfigError(victor.configPeakOutputForward(config.maxOutput()), "configuring max output");
+    handleConfigError(victor.configPeakOutputReverse(-config.maxOutput()), "configuring max output");
+
+    // Checked by deviceConfigured() the next time the configuration is unchanged.
+    handleConfigError(victor.configSetCustomParam(configurationMarker(), CONFIGURATION_MARKER_PARAM),
+        "saving configuration marker");
+  }
+
+  private double neutralDeadband() {
+    if (config.neutralDeadband() != null) {
+      return config.neutralDeadband();
     }
-    Errors.handleCtre(victor.configNeutralDeadband(neutralDeadband), logger, "setting neutral deadband");
+    return DEFAULT_NEUTRAL_DEADBAND;
+  }
 
-    Errors.handleCtre(victor.configPeakOutputForward(config.maxOutput()), logger, "configuring max output");
-    Errors.handleCtre(victor.configPeakOutputReverse(-config.maxOutput()), logger, "configuring max output");
+  @Override
+  protected String deviceFingerprint() {
+    return String.format("deadband=%s;vc=%s", neutralDeadband(), SuController.DEFAULT_VOLTAGE_COMPENSTAION);
+  }
 
-    if (sensorConfig != null) {
-      if (sensorConfig.source() instanceof IntegratedSensorSource) {
-        throw new MotorConfigurationError(
-            "Victor SPX has no integrated sensor, but motor was configured to use integerated sensor source");
-      }
-      if (sensorConfig.source() instanceof ConnectedSensorSource) {
-        throw new MotorConfigurationError(
-            "Victor SPX does not supported directly connected sensors, but was configured to use one.");
-      }
-      if (sensorConfig.source() instanceof ExternalSensorSource) {
-        configureSoftPid();
-      }
+  @Override
+  protected boolean deviceConfigured() {
+    return victor.configGetCustomParam(CONFIGURATION_MARKER_PARAM) == configurationMarker();
+  }
+
+  private void configureStatusFrames(StatusFrameProfile profile) {
+    setStatusFrame(StatusFrame.Status_1_General, profile.ctrePeriod(Frame.GENERAL));
+    setStatusFrame(StatusFrame.Status_2_Feedback0, profile.ctrePeriod(Frame.POSITION, Frame.VELOCITY));
+    setStatusFrame(StatusFrame.Status_4_AinTempVbat, profile.ctrePeriod(Frame.TELEMETRY));
+    setStatusFrame(StatusFrame.Status_10_Targets, profile.ctrePeriod(Frame.CLOSED_LOOP));
+    setStatusFrame(StatusFrame.Status_13_Base_PIDF0, profile.ctrePeriod(Frame.CLOSED_LOOP));
+  }
+
+  private void setStatusFrame(StatusFrame frame, int period) {
+    if (period < 0) {
+      return;
     }
+    Errors.handleCtre(victor.setStatusFramePeriod(frame, period), logger,
+        "setting period of status frame " + frame.name());
   }
 
   @Override
@@ -87,19 +138,13 @@ public class SuVictorSpx extends SuController {
   public void tick() {
     Errors.handleCtre(victor.getLastError(), logger, "in motor loop, likely from setting a motor update");
 
-    if (softPidControllerEnabled) {
-      if (softPidControllerMode) {
-        // velocity mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-        double output = softPidController.calculate(current);
-        victor.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-      } else {
-        // position mode
-        double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-        double output = softPidController.calculate(current);
-        victor.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
-      }
+    if (victor.hasResetOccurred()) {
+      // Status frame periods don't survive a reset of the controller.
+      logger.warning("motor controller reset, restoring status frame periods");
+      configureStatusFrames(config.statusFrameProfile());
     }
+
+    tickSoftPid();
   }
 
   private void restoreDefaultVoltageCompensation() {
@@ -109,20 +154,14 @@ public class SuVictorSpx extends SuController {
   }
 
   @Override
-  public void set(SuController.ControlMode mode, double setpoint) {
+  protected void setOutput(SuController.ControlMode mode, double setpoint) {
     if (voltageControlOverrideSet && mode != SuController.ControlMode.VOLTAGE) {
       restoreDefaultVoltageCompensation();
       voltageControlOverrideSet = false;
       lastVoltageCompensation = null;
     }
 
-    // Skip updating the motor if the setpoint is the same, this reduces unneccessary CAN messages.
-    if (setpoint == lastSetpoint && mode == lastMode) {
-      return;
-    }
-    lastSetpoint = setpoint;
-    lastMode = mode;
-    softPidControllerEnabled = false;
+    disableSoftPid();
 
     switch (mode) {
       case PERCENT_OUTPUT:
@@ -152,42 +191,28 @@ public class SuVictorSpx extends SuController {
   }
 
   private void setPosition(double setpoint) {
-    // Using sensor external to the Victor.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = false;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-      double output = softPidController.calculate(current, setpoint);
-      victor.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
+    if (sensor.soft()) {
+      setSoftPid(false, setpoint);
       return;
     }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    throw new MotorConfigurationError("position control requires an external sensor on a Victor SPX");
   }
 
   private void setVelocity(double setpoint) {
-    // Using sensor external to the Victor.
-    if (sensorConfig.source() instanceof SensorConfiguration.ExternalSensorSource) {
-      softPidControllerEnabled = true;
-      softPidControllerMode = true;
-
-      double current = ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-      double output = softPidController.calculate(current, setpoint);
-      victor.set(com.ctre.phoenix.motorcontrol.ControlMode.PercentOutput, output);
+    if (sensor.soft()) {
+      setSoftPid(true, setpoint);
       return;
     }
-    throw new MotorConfigurationError(
-        "unkonwn type of sensor configuration: " + sensorConfig.source().getClass().getName());
+    throw new MotorConfigurationError("velocity control requires an external sensor on a Victor SPX");
   }
 
   @Override
-  public void stop() {
+  protected void stopOutput() {
     victor.stopMotor();
   }
 
   @Override
-  public void follow(SuController other) { 
+  protected void followOutput(SuController other) {
     if (!(other.rawController() instanceof IFollower)) {
       throw new MotorConfigurationError(
           "CTRE motor controllers can only follow other motor controllers from CTRE");
@@ -197,25 +222,7 @@ public class SuVictorSpx extends SuController {
   }
 
   @Override
-  public double outputPosition() {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.position();
-    }
-    return 0;
-  }
-
-  @Override
-  public double outputVelocity() {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      return ((ExternalSensorSource) sensorConfig.source()).sensor.velocity();
-    }
-    return 0;
-  }
-
-  @Override
-  public void setSensorPosition(double position) {
-    if (sensorConfig.source() instanceof ExternalSensorSource) {
-      ((ExternalSensorSource) sensorConfig.source()).sensor.setPosition(position);
-    }
+  public double appliedOutput() {
+    return victor.getMotorOutputPercent();
   }
 }
@@ -0,0 +1,183 @@
+package frc.sorutil.motor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import frc.sorutil.motor.SuController.ControlMode;
+
+/**
+ * TelemetryDecoder converts a recording made by {@link TelemetryRecorder} to CSV, with one row per controller per
+ * cycle. Meant to be run on a laptop, after copying the recording off the robot:
+ *
+ * <pre>
+ * java -cp sorutil.jar frc.sorutil.motor.TelemetryDecoder DIRECTORY [SESSION] [OUTPUT.csv]
+ * </pre>
+ *
+ * <p>
+ * Without a session, the most recent recording in the directory is decoded. Without an output file, the CSV is written
+ * to standard output. Segment files are reused in a ring, so they're decoded in the order of the index in their header
+ * rather than by name.
+ * </p>
+ */
+public final class TelemetryDecoder {
+  private static final String HEADER = "time,cycle,id,controller,mode,setpoint,position,velocity,applied_output";
+
+  private TelemetryDecoder() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 3) {
+      System.err.println("usage: TelemetryDecoder DIRECTORY [SESSION] [OUTPUT.csv]");
+      System.exit(2);
+    }
+    File directory = new File(args[0]);
+    String session = args.length > 1 ? args[1] : latestSession(directory);
+    if (session == null) {
+      System.err.println("no telemetry recordings found in " + directory);
+      System.exit(1);
+    }
+
+    if (args.length > 2) {
+      try (Writer out = new BufferedWriter(new FileWriter(args[2]))) {
+        toCsv(directory, session, out);
+      }
+    } else {
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+      toCsv(directory, session, out);
+      out.flush();
+    }
+  }
+
+  /**
+   * Writes every record of a recording as CSV, with a header row. Time is in seconds since the recording started.
+   *
+   * @param directory the directory the recording was written to
+   * @param session   the name of the recording, see {@link TelemetryRecorder#session()}
+   * @param out       where to write the CSV
+   * @throws IOException if a segment can't be read, or isn't a telemetry segment
+   */
+  public static void toCsv(File directory, String session, Writer out) throws IOException {
+    Properties names = new Properties();
+    File namesFile = new File(directory, session + ".names");
+    if (namesFile.isFile()) {
+      try (InputStream in = new FileInputStream(namesFile)) {
+        names.load(in);
+      }
+    }
+
+    ControlMode[] modes = ControlMode.values();
+    out.write(HEADER);
+    out.write('\n');
+    for (Segment segment : segments(directory, session)) {
+      MappedByteBuffer buffer = segment.buffer;
+      int count = readHeader(segment.file, buffer);
+
+      for (int i = 0; i < count; i++) {
+        buffer.position(TelemetryRecorder.HEADER_SIZE + i * TelemetryRecorder.RECORD_SIZE);
+        long time = buffer.getLong();
+        int cycle = buffer.getInt();
+        int id = buffer.getInt();
+        double setpoint = buffer.getDouble();
+        double position = buffer.getDouble();
+        double velocity = buffer.getDouble();
+        double output = buffer.getDouble();
+        int mode = buffer.get();
+
+        // The same on every platform: a decimal point regardless of locale, and '\n' to match the header.
+        out.write(String.format(Locale.ROOT, "%.6f,%d,%d,%s,%s,%s,%s,%s,%s\n", time / 1e9, cycle, id,
+            names.getProperty(Integer.toString(id), ""), mode >= 0 && mode < modes.length ? modes[mode].name() : "",
+            setpoint, position, velocity, output));
+      }
+    }
+  }
+
+  /**
+   * Validates a segment's header, returning the number of records in it.
+   */
+  private static int readHeader(File segment, MappedByteBuffer buffer) throws IOException {
+    if (buffer.capacity() < TelemetryRecorder.HEADER_SIZE || buffer.getInt(0) != TelemetryRecorder.MAGIC) {
+      throw new IOException("not a telemetry segment: " + segment);
+    }
+    short version = buffer.getShort(4);
+    short recordSize = buffer.getShort(6);
+    if (version != TelemetryRecorder.VERSION || recordSize != TelemetryRecorder.RECORD_SIZE) {
+      throw new IOException(String.format("unsupported telemetry segment version %d with %d byte records: %s",
+          version, recordSize, segment));
+    }
+    int count = buffer.getInt(TelemetryRecorder.COUNT_OFFSET);
+    long available = (buffer.capacity() - TelemetryRecorder.HEADER_SIZE) / TelemetryRecorder.RECORD_SIZE;
+    if (count < 0 || count > available) {
+      throw new IOException("telemetry segment is truncated: " + segment);
+    }
+    return count;
+  }
+
+  /**
+   * The segments of a recording that hold records, in the order they were written.
+   */
+  private static List<Segment> segments(File directory, String session) throws IOException {
+    File[] files = directory.listFiles(
+        (dir, name) -> name.startsWith(session + "-") && name.endsWith(TelemetryRecorder.EXTENSION));
+    if (files == null) {
+      throw new IOException("failed to list telemetry directory: " + directory);
+    }
+
+    List<Segment> segments = new ArrayList<>();
+    for (File file : files) {
+      MappedByteBuffer buffer;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      readHeader(file, buffer);
+      int index = buffer.getInt(TelemetryRecorder.INDEX_OFFSET);
+      // A slot that was created but never written to.
+      if (index >= 0) {
+        segments.add(new Segment(file, buffer, index));
+      }
+    }
+    segments.sort((a, b) -> Integer.compare(a.index, b.index));
+    return segments;
+  }
+
+  private static String latestSession(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(TelemetryRecorder.EXTENSION));
+    if (files == null) {
+      return null;
+    }
+    String latest = null;
+    for (File file : files) {
+      // telemetry-yyyyMMdd-HHmmss-NNNNN.sutm, sessions sort by the time they started.
+      String name = file.getName();
+      String session = name.substring(0, name.lastIndexOf('-'));
+      if (latest == null || session.compareTo(latest) > 0) {
+        latest = session;
+      }
+    }
+    return latest;
+  }
+
+  private static final class Segment {
+    final File file;
+    final MappedByteBuffer buffer;
+    final int index;
+
+    Segment(File file, MappedByteBuffer buffer, int index) {
+      this.file = file;
+      this.buffer = buffer;
+      this.index = index;
+    }
+  }
+}
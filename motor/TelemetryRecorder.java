@@ -0,0 +1,336 @@
+package frc.sorutil.motor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import frc.sorutil.motor.SuController.ControlMode;
+
+/**
+ * TelemetryRecorder records the state of every SuController once per MotorManager cycle into compact binary files, for
+ * offline analysis with {@link TelemetryDecoder}. Each record holds the controller's control mode, the setpoint
+ * requested, the output position and velocity, and the output applied by the device.
+ *
+ * <p>
+ * Records are written into a memory-mapped file segment, so recording a cycle is a handful of memory writes, with no
+ * system calls and no allocation; the operating system writes the pages to disk in the background. Segments have a
+ * fixed size and are filled with zeros when their file is created, so that running out of disk space is noticed then
+ * rather than while writing to it. The segment files form a ring: the next one is prepared on a background thread
+ * while the current one fills, and once every file has been used the oldest is overwritten. A recording therefore
+ * takes exactly maxSegments times the segment size on disk. One file is always held ready for the next segment, so the
+ * records kept are those of the last maxSegments - 2 full segments plus the current one. Each file is mapped once for
+ * the life of the recorder.
+ * </p>
+ *
+ * <p>
+ * Files are named after the time recording started and their slot in the ring, e.g.
+ * telemetry-20240302-134501-00000.sutm, with the names of the controllers in telemetry-20240302-134501.names. Each
+ * recording has its own files, so older recordings should be cleaned up separately. Recording is enabled with
+ * {@link MotorManager#setTelemetryRecorder(TelemetryRecorder)}.
+ * </p>
+ *
+ * <p>
+ * Each segment starts with a 64 byte header, followed by 56 byte records, all little endian:
+ * </p>
+ *
+ * <pre>
+ * header: int magic ("SUTM"), short version, short record size, int segment index (-1 if unused), int record count,
+ *         long session start (ms since the epoch)
+ * record: long time (ns since the session started), int cycle, int controller ID, double setpoint,
+ *         double position (degrees), double velocity (RPM), double applied output, byte control mode
+ * </pre>
+ *
+ * <p>
+ * The control mode is the ordinal of the SuController.ControlMode, or -1 before any setpoint has been sent. Not thread
+ * safe; records are written from the scheduler thread by the MotorManager.
+ * </p>
+ */
+public class TelemetryRecorder implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger("TelemetryRecorder");
+
+  static final int MAGIC = 0x5355544d;
+  static final short VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 56;
+  static final int INDEX_OFFSET = 8;
+  static final int COUNT_OFFSET = 12;
+  static final String EXTENSION = ".sutm";
+
+  private static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+  private static final int DEFAULT_MAX_SEGMENTS = 8;
+  private static final int ZERO_FILL_CHUNK = 64 << 10;
+  private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+  private final File directory;
+  private final String session;
+  private final int segmentSize;
+  // Every segment ever used, by slot. Files are reused rather than deleted, since the space of a deleted file that is
+  // still mapped isn't freed until its buffer is garbage collected, which could be never.
+  private final Segment[] slots;
+  private final long startMillis;
+  private final long startNanos;
+
+  private final ExecutorService io;
+  private Segment current;
+  private CompletableFuture<Segment> next;
+  private boolean closed;
+
+  private long records;
+  private int highestNamedId = -1;
+  private final Properties names = new Properties();
+
+  /**
+   * Starts a recording in the given directory, with 8 segments of 16MB.
+   *
+   * @throws IOException if the directory or the first segment can't be created
+   */
+  public TelemetryRecorder(File directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+  }
+
+  /**
+   * Starts a recording in the given directory.
+   *
+   * @param directory   the directory to write segments to, created if it doesn't exist
+   * @param segmentSize the size of each segment in bytes
+   * @param maxSegments the number of segment files, which are overwritten in turn
+   * @throws IOException if the directory or the first segment can't be created
+   */
+  public TelemetryRecorder(File directory, int segmentSize, int maxSegments) throws IOException {
+    if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+      throw new IllegalArgumentException("segment size must fit at least one record, got: " + segmentSize);
+    }
+    if (maxSegments < 2) {
+      throw new IllegalArgumentException("at least two segments are needed to rotate between, got: " + maxSegments);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("failed to create telemetry directory: " + directory);
+    }
+
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.slots = new Segment[maxSegments];
+    this.startMillis = System.currentTimeMillis();
+    this.startNanos = System.nanoTime();
+    this.session = "telemetry-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startMillis));
+
+    io = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "TelemetryRecorder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      current = segment(0);
+    } catch (IOException e) {
+      io.shutdown();
+      throw e;
+    }
+    next = prepare(1);
+  }
+
+  /**
+   * Records one cycle for the first count controllers. Called by the MotorManager at the end of every cycle.
+   */
+  void record(long cycle, SuController[] motors, int count) {
+    if (closed) {
+      return;
+    }
+    long time = System.nanoTime() - startNanos;
+
+    for (int i = 0; i < count; i++) {
+      SuController motor = motors[i];
+      if (!motor.configured()) {
+        continue;
+      }
+      if (motor.id() > highestNamedId) {
+        saveNames(motors, count);
+      }
+
+      MappedByteBuffer buffer = current.buffer;
+      if (buffer.remaining() < RECORD_SIZE) {
+        if (!rotate()) {
+          return;
+        }
+        buffer = current.buffer;
+      }
+
+      ControlMode mode = motor.lastMode();
+      buffer.putLong(time);
+      buffer.putInt((int) cycle);
+      buffer.putInt(motor.id());
+      buffer.putDouble(motor.requestedSetpoint());
+      buffer.putDouble(motor.outputPosition());
+      buffer.putDouble(motor.outputVelocity());
+      buffer.putDouble(motor.appliedOutput());
+      buffer.put((byte) (mode == null ? -1 : mode.ordinal()));
+      buffer.position(buffer.position() + 7);
+
+      current.records++;
+      records++;
+    }
+    // Written once per cycle, so a reader never sees a record before it is complete.
+    current.buffer.putInt(COUNT_OFFSET, current.records);
+  }
+
+  /**
+   * The number of records written so far, across all segments.
+   */
+  public long recordCount() {
+    return records;
+  }
+
+  /**
+   * The name shared by every file of this recording, e.g. telemetry-20240302-134501.
+   */
+  public String session() {
+    return session;
+  }
+
+  /**
+   * Stops recording, and writes everything recorded to disk. Records are no longer written once closed.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    io.shutdown();
+    try {
+      // Segments are prepared on the io thread, so wait for it before looking at them.
+      io.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Segment segment : slots) {
+      if (segment != null) {
+        segment.buffer.force();
+      }
+    }
+  }
+
+  private boolean rotate() {
+    Segment full = current;
+    full.buffer.putInt(COUNT_OFFSET, full.records);
+    try {
+      current = next.join();
+    } catch (CompletionException e) {
+      logger.warning("failed to create telemetry segment, recording stopped: " + e.getCause());
+      closed = true;
+      full.buffer.force();
+      io.shutdown();
+      return false;
+    }
+    // The full segment isn't forced to disk: the operating system writes it back within seconds anyway, and forcing
+    // write-protects its pages again, making every write on the next lap of the ring fault.
+    next = prepare(current.index + 1);
+    return true;
+  }
+
+  private CompletableFuture<Segment> prepare(int index) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return segment(index);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, io);
+  }
+
+  /**
+   * Returns the slot that the segment with the given index is written to, ready for its first record. Each slot's file
+   * is created and mapped once, the first time it's used, and then overwritten on every lap of the ring.
+   */
+  private Segment segment(int index) throws IOException {
+    int slot = index % slots.length;
+    Segment segment = slots[slot];
+    if (segment == null) {
+      segment = createSegment(slot);
+      slots[slot] = segment;
+    }
+
+    MappedByteBuffer buffer = segment.buffer;
+    // Cleared before the index changes, so that a reader never takes the previous lap's records for this segment's.
+    buffer.putInt(COUNT_OFFSET, 0);
+    buffer.putInt(INDEX_OFFSET, index);
+    buffer.position(HEADER_SIZE);
+    segment.index = index;
+    segment.records = 0;
+    return segment;
+  }
+
+  private Segment createSegment(int slot) throws IOException {
+    File file = new File(directory, String.format("%s-%05d%s", session, slot, EXTENSION));
+    MappedByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+      // Really allocate the space up front, rather than leaving a sparse file, since running out of space while
+      // writing through the mapping would crash the JVM.
+      channel.truncate(0);
+      ByteBuffer zeros = ByteBuffer.allocateDirect(ZERO_FILL_CHUNK);
+      long written = 0;
+      while (written < segmentSize) {
+        zeros.clear();
+        zeros.limit((int) Math.min(ZERO_FILL_CHUNK, segmentSize - written));
+        written += channel.write(zeros, written);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putShort(VERSION);
+    buffer.putShort((short) RECORD_SIZE);
+    buffer.putInt(-1);
+    buffer.putInt(0);
+    buffer.putLong(startMillis);
+    // Only whole records fit, so that a record is never split between segments.
+    buffer.limit(HEADER_SIZE + (segmentSize - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE);
+    return new Segment(buffer);
+  }
+
+  /**
+   * Writes the names of the controllers being recorded, so the decoder can show names rather than IDs. Only called
+   * when a controller that hasn't been named yet is recorded.
+   */
+  private void saveNames(SuController[] motors, int count) {
+    for (int i = 0; i < count; i++) {
+      names.setProperty(Integer.toString(motors[i].id()), motors[i].logger.getName());
+      highestNamedId = Math.max(highestNamedId, motors[i].id());
+    }
+
+    Properties snapshot = new Properties();
+    snapshot.putAll(names);
+    File file = new File(directory, session + ".names");
+    io.execute(() -> {
+      try (OutputStream out = new FileOutputStream(file)) {
+        snapshot.store(out, "Controller names by ID for " + session);
+      } catch (IOException e) {
+        logger.warning("failed to save telemetry controller names: " + e);
+      }
+    });
+  }
+
+  private static final class Segment {
+    final MappedByteBuffer buffer;
+    int index;
+    int records;
+
+    Segment(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+}